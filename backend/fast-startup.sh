@@ -0,0 +1,107 @@
+#!/usr/bin/env bash
+# Fast-startup build and launcher for the backend.
+#
+#   ./fast-startup.sh build     AOT-processed jar + AppCDS archive (training run needs the database)
+#   ./fast-startup.sh run       start with AOT, CDS and the fast-startup profile
+#   ./fast-startup.sh measure   time-to-first-request and RSS, baseline vs fast-startup
+#                               (median of MEASURE_RUNS runs each, default 5)
+#
+# Native image (GraalVM): mvn -Pnative -DskipTests native:compile
+set -euo pipefail
+cd "$(dirname "$0")"
+
+JAR=target/genbot-backend-1.0.0.jar
+APP_DIR=target/fast-startup
+ARCHIVE=$APP_DIR/application.jsa
+PORT=${PORT:-8080}
+
+classpath() {
+    # Keep the exact jar order from the Boot index; CDS rejects a different classpath,
+    # and it only accepts jars, so the application classes are packed into one
+    local cp=$APP_DIR/application.jar
+    while read -r entry; do
+        entry=${entry#- \"}
+        cp="$cp:$APP_DIR/${entry%\"}"
+    done < "$APP_DIR/BOOT-INF/classpath.idx"
+    echo "$cp"
+}
+
+fast_java() {
+    exec java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto \
+        -Dspring.aot.enabled=true \
+        -Dspring.profiles.active=fast-startup \
+        -cp "$(classpath)" com.chatbot.GenBotApplication
+}
+
+build() {
+    mvn -B -Pfast-startup -DskipTests package
+    rm -rf "$APP_DIR"
+    mkdir -p "$APP_DIR"
+    (cd "$APP_DIR" && jar -xf ../../"$JAR")
+    jar -cf "$APP_DIR/application.jar" -C "$APP_DIR/BOOT-INF/classes" .
+
+    # Training run: refresh the context once and dump the loaded classes
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" \
+        -Dspring.aot.enabled=true \
+        -Dspring.profiles.active=fast-startup \
+        -Dspring.context.exit=onRefresh \
+        -cp "$(classpath)" com.chatbot.GenBotApplication
+    echo "CDS archive written to $ARCHIVE"
+}
+
+measure_one() {
+    local label=$1
+    shift
+    local start
+    start=$(date +%s%N)
+    "$@" > "target/$label.log" 2>&1 &
+    local pid=$!
+    until curl -sf "http://localhost:$PORT/api/users" > /dev/null; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "$label: failed to start, see target/$label.log" >&2
+            return 1
+        fi
+        sleep 0.05
+    done
+    local elapsed=$(( ($(date +%s%N) - start) / 1000000 ))
+    local rss
+    rss=$(awk '/VmRSS/ {print $2}' "/proc/$pid/status")
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+    echo "$elapsed $rss"
+}
+
+# Runs one variant MEASURE_RUNS times and prints every run plus the medians
+measure_series() {
+    local label=$1
+    shift
+    local runs=${MEASURE_RUNS:-5}
+    local results=()
+    for ((i = 1; i <= runs; i++)); do
+        results+=("$(measure_one "$label" "$@")")
+        echo "$label run $i: first request after ${results[-1]% *} ms, RSS ${results[-1]#* } kB"
+    done
+    local ms rss
+    ms=$(printf '%s\n' "${results[@]}" | awk '{print $1}' | sort -n | awk '{a[NR]=$1} END {print a[int((NR+1)/2)]}')
+    rss=$(printf '%s\n' "${results[@]}" | awk '{print $2}' | sort -n | awk '{a[NR]=$1} END {print a[int((NR+1)/2)]}')
+    echo "$label median: first request after $ms ms, RSS $rss kB"
+}
+
+case "${1:-run}" in
+    build)
+        build
+        ;;
+    run)
+        fast_java
+        ;;
+    measure)
+        [ -f "$ARCHIVE" ] || build
+        # Baseline mirrors the previous defaults: Hibernate schema update, everything eager
+        measure_series baseline java -jar "$JAR" --spring.jpa.hibernate.ddl-auto=update --spring.flyway.enabled=false
+        measure_series fast-startup fast_java
+        ;;
+    *)
+        echo "Usage: $0 [build|run|measure]"
+        exit 1
+        ;;
+esac
@@ -0,0 +1,417 @@
+package com.chatbot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many prompts or files against one session. Items go through a shared
+ * bounded worker pool (extract, budget, rate-limit, call Groq); each result is
+ * written to the caller as one NDJSON line as soon as it finishes, and the
+ * resulting messages are saved with JDBC batch inserts rather than one insert
+ * per item.
+ */
+@Service
+@RegisterReflectionForBinding({BatchService.BatchItemResult.class, BatchService.BatchSummary.class})
+public class BatchService {
+
+    private static final String DOCUMENT_PREFIX = "Analyze and summarize this document: ";
+    private static final String DOCUMENT_SUFFIX = "\n\nProvide only your analysis and insights without repeating the document content.";
+
+    // No item starts a Groq call later than this before the stream times out (one call with retries fits)
+    private static final long CALL_GRACE_MS = 120_000;
+
+    @Autowired
+    private GroqService groqService;
+
+    @Autowired
+    private TokenBudgetService tokenBudgetService;
+
+    @Autowired
+    private GroqRateLimiter rateLimiter;
+
+    @Autowired
+    private FileProcessingService fileProcessingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private ChatEventBus chatEventBus;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${batch.max-concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${batch.max-items:500}")
+    private int maxItems;
+
+    @Value("${batch.persist-size:20}")
+    private int persistSize;
+
+    @Value("${batch.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public ResponseBodyEmitter submit(ChatSession session, List<BatchItem> items, int maxTokens) {
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("Batch is empty");
+        }
+        if (items.size() > maxItems) {
+            throw new IllegalArgumentException("Batch exceeds " + maxItems + " items");
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMs);
+        long deadline = System.currentTimeMillis() + Math.max(0, timeoutMs - CALL_GRACE_MS);
+        BatchRun run = new BatchRun(session, items.size(), emitter, deadline);
+        emitter.onTimeout(run::cancel);
+        emitter.onError(e -> run.cancel());
+
+        System.out.println("Batch started for session " + session.getId() + ": " + items.size() + " items");
+        for (BatchItem item : items) {
+            executor.execute(() -> process(run, item, maxTokens));
+        }
+        return emitter;
+    }
+
+    private void process(BatchRun run, BatchItem item, int maxTokens) {
+        if (run.isCancelled()) {
+            run.complete(item, BatchItemResult.error(item, "Batch cancelled"), List.of(), null);
+            return;
+        }
+        try {
+            List<Message> messages = new ArrayList<>();
+            FileUpload fileUpload = null;
+            String aiPrompt;
+
+            if (item.isFile()) {
+                String extractedText = fileProcessingService.extractText(item.getContentType(), item.getContent());
+                fileUpload = new FileUpload(item.getName(), item.getContentType(), (long) item.getContent().length, "uploads/" + item.getName());
+                fileUpload.setExtractedText(extractedText);
+                aiPrompt = tokenBudgetService.fitDocument(
+                    DOCUMENT_PREFIX + item.getName() + "\n\nContent: ", extractedText, DOCUMENT_SUFFIX, maxTokens);
+            } else {
+                Message userMessage = new Message(item.getPrompt(), "user");
+                userMessage.setSession(run.session);
+                messages.add(userMessage);
+                aiPrompt = tokenBudgetService.fitPrompt(item.getPrompt(), maxTokens);
+            }
+
+            // Prompts are budgeted against the per-minute token limit, so one item never waits more than a minute
+            int clampedMaxTokens = tokenBudgetService.clampMaxTokens(aiPrompt, maxTokens);
+            if (!rateLimiter.tryAcquire(tokenBudgetService.countPromptTokens(aiPrompt) + clampedMaxTokens, run.deadline)) {
+                // The rate limits leave no room for this item before the stream would time out
+                run.complete(item, BatchItemResult.error(item, "Batch time limit reached before this item could run"), List.of(), null);
+                return;
+            }
+            String botResponse = groqService.getChatResponse(aiPrompt, clampedMaxTokens);
+
+            Message botMessage = new Message(botResponse, "bot");
+            botMessage.setSession(run.session);
+            messages.add(botMessage);
+
+            run.complete(item, BatchItemResult.ok(item, botResponse), messages, fileUpload);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.complete(item, BatchItemResult.error(item, "Batch interrupted"), List.of(), null);
+        } catch (Exception e) {
+            System.err.println("Batch item " + item.getIndex() + " failed: " + e.getMessage());
+            run.complete(item, BatchItemResult.error(item, e.getMessage()), List.of(), null);
+        }
+    }
+
+    /**
+     * Writes a group of results with JDBC batch inserts. Message ids are taken
+     * from the sequence up front (IDENTITY entities would make Hibernate insert
+     * row by row) so the events can reference them.
+     */
+    private void persist(List<Message> messages, List<FileUpload> fileUploads) {
+        if (!messages.isEmpty()) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('message_id_seq') FROM generate_series(1, ?)", Long.class, messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                messages.get(i).setId(ids.get(i));
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO messages (id, content, sender, timestamp, session_id) VALUES (?, ?, ?, ?, ?)",
+                messages, messages.size(), (ps, message) -> {
+                    ps.setLong(1, message.getId());
+                    ps.setString(2, message.getContent());
+                    ps.setString(3, message.getSender());
+                    ps.setTimestamp(4, Timestamp.valueOf(message.getTimestamp()));
+                    ps.setLong(5, message.getSession().getId());
+                });
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO file_uploads (file_name, file_type, file_size, file_path, extracted_text, uploaded_at) VALUES (?, ?, ?, ?, ?, ?)",
+                fileUploads, fileUploads.size(), (ps, upload) -> {
+                    ps.setString(1, upload.getFileName());
+                    ps.setString(2, upload.getFileType());
+                    ps.setLong(3, upload.getFileSize());
+                    ps.setString(4, upload.getFilePath());
+                    ps.setString(5, upload.getExtractedText());
+                    ps.setTimestamp(6, Timestamp.valueOf(upload.getUploadedAt()));
+                });
+        });
+        for (Message message : messages) {
+            chatEventBus.publish(message.getSession().getId(), ChatEventBus.MESSAGE, message.getId(), null);
+        }
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private class BatchRun {
+        private final ChatSession session;
+        private final ResponseBodyEmitter emitter;
+        private final long deadline;
+        private final int total;
+        private final AtomicInteger remaining;
+        private List<BatchItem> pendingItems = new ArrayList<>();
+        private List<Message> pendingMessages = new ArrayList<>();
+        private List<FileUpload> pendingUploads = new ArrayList<>();
+        private LocalDateTime lastTimestamp;
+        private int persisting;
+        private int succeeded;
+        private int failed;
+        private boolean finished;
+        private volatile boolean cancelled;
+
+        BatchRun(ChatSession session, int size, ResponseBodyEmitter emitter, long deadline) {
+            this.session = session;
+            this.total = size;
+            this.remaining = new AtomicInteger(size);
+            this.emitter = emitter;
+            this.deadline = deadline;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        void complete(BatchItem item, BatchItemResult result, List<Message> messages, FileUpload fileUpload) {
+            List<BatchItem> itemsToSave = null;
+            List<Message> messagesToSave = null;
+            List<FileUpload> uploadsToSave = null;
+
+            synchronized (this) {
+                if (!messages.isEmpty() || fileUpload != null) {
+                    pendingItems.add(item);
+                }
+                // Items finish concurrently; restamp so each prompt is directly followed by its answer
+                for (Message message : messages) {
+                    lastTimestamp = lastTimestamp == null
+                        ? LocalDateTime.now().truncatedTo(ChronoUnit.MICROS)
+                        : max(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS), lastTimestamp.plus(1, ChronoUnit.MICROS));
+                    message.setTimestamp(lastTimestamp);
+                }
+                pendingMessages.addAll(messages);
+                if (fileUpload != null) {
+                    pendingUploads.add(fileUpload);
+                }
+                send(result);
+                if (result.getStatus().equals("ok")) {
+                    succeeded++;
+                } else {
+                    failed++;
+                }
+
+                boolean last = remaining.decrementAndGet() == 0;
+                if (last || pendingMessages.size() + pendingUploads.size() >= persistSize) {
+                    itemsToSave = pendingItems;
+                    messagesToSave = pendingMessages;
+                    uploadsToSave = pendingUploads;
+                    pendingItems = new ArrayList<>();
+                    pendingMessages = new ArrayList<>();
+                    pendingUploads = new ArrayList<>();
+                    persisting++;
+                }
+            }
+
+            // Saved outside the lock so other workers keep streaming while this batch is written
+            if (messagesToSave != null) {
+                persistOrReport(itemsToSave, messagesToSave, uploadsToSave);
+            }
+            finishIfDone();
+        }
+
+        private void persistOrReport(List<BatchItem> itemsToSave, List<Message> messagesToSave, List<FileUpload> uploadsToSave) {
+            try {
+                persist(messagesToSave, uploadsToSave);
+            } catch (Exception e) {
+                // These items were already reported as ok; a later error line for the same index supersedes it
+                System.err.println("Failed to persist batch results: " + e.getMessage());
+                synchronized (this) {
+                    for (BatchItem saveItem : itemsToSave) {
+                        send(BatchItemResult.error(saveItem, "Result could not be saved: " + e.getMessage()));
+                    }
+                    succeeded -= itemsToSave.size();
+                    failed += itemsToSave.size();
+                }
+            } finally {
+                synchronized (this) {
+                    persisting--;
+                }
+            }
+        }
+
+        private void finishIfDone() {
+            synchronized (this) {
+                // The stream stays open until every persist has finished, so save errors can still be reported
+                if (finished || remaining.get() > 0 || persisting > 0) {
+                    return;
+                }
+                finished = true;
+            }
+            // The session entity is as old as the batch; only bump its timestamp
+            sessionRepository.updateUpdatedAt(session.getId(), LocalDateTime.now());
+            System.out.println("Batch finished for session " + session.getId() + ": " + succeeded + " ok, " + failed + " failed");
+            if (!cancelled) {
+                send(new BatchSummary(total, succeeded, failed));
+                emitter.complete();
+            }
+        }
+
+        private void send(Object result) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                emitter.send(objectMapper.writeValueAsString(result) + "\n");
+            } catch (IOException | IllegalStateException e) {
+                // Client went away; finish the items already running but skip the rest
+                System.err.println("Batch client disconnected: " + e.getMessage());
+                cancelled = true;
+            }
+        }
+    }
+
+    public static class BatchItem {
+        private final int index;
+        private final String name;
+        private final String prompt;
+        private final String contentType;
+        private final byte[] content;
+
+        private BatchItem(int index, String name, String prompt, String contentType, byte[] content) {
+            this.index = index;
+            this.name = name;
+            this.prompt = prompt;
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        public static BatchItem prompt(int index, String prompt) {
+            return new BatchItem(index, null, prompt, null, null);
+        }
+
+        public static BatchItem file(int index, String name, String contentType, byte[] content) {
+            return new BatchItem(index, name, null, contentType, content);
+        }
+
+        public boolean isFile() { return content != null; }
+        public int getIndex() { return index; }
+        public String getName() { return name; }
+        public String getPrompt() { return prompt; }
+        public String getContentType() { return contentType; }
+        public byte[] getContent() { return content; }
+    }
+
+    /**
+     * Last line of every batch stream that was not cancelled; a stream that
+     * ends without it was cut off.
+     */
+    public static class BatchSummary {
+        private final int total;
+        private final int succeeded;
+        private final int failed;
+
+        BatchSummary(int total, int succeeded, int failed) {
+            this.total = total;
+            this.succeeded = succeeded;
+            this.failed = failed;
+        }
+
+        public String getStatus() { return "done"; }
+        public int getTotal() { return total; }
+        public int getSucceeded() { return succeeded; }
+        public int getFailed() { return failed; }
+    }
+
+    public static class BatchItemResult {
+        private final int index;
+        private final String name;
+        private final String status;
+        private final String content;
+        private final String error;
+
+        private BatchItemResult(int index, String name, String status, String content, String error) {
+            this.index = index;
+            this.name = name;
+            this.status = status;
+            this.content = content;
+            this.error = error;
+        }
+
+        static BatchItemResult ok(BatchItem item, String content) {
+            return new BatchItemResult(item.getIndex(), item.getName(), "ok", content, null);
+        }
+
+        static BatchItemResult error(BatchItem item, String error) {
+            return new BatchItemResult(item.getIndex(), item.getName(), "error", null, error);
+        }
+
+        public int getIndex() { return index; }
+        public String getName() { return name; }
+        public String getStatus() { return status; }
+        public String getContent() { return content; }
+        public String getError() { return error; }
+    }
+}
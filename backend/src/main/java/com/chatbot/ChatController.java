@@ -1,11 +1,21 @@
 package com.chatbot;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.time.LocalDateTime;
 
 @RestController
@@ -34,6 +44,36 @@ public class ChatController {
     @Autowired
     private ImageGenerationService imageGenerationService;
     
+    @Autowired
+    private TokenBudgetService tokenBudgetService;
+    
+    @Autowired
+    private BatchService batchService;
+    
+    @Autowired
+    private GroqRateLimiter rateLimiter;
+    
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+    
+    @Autowired
+    private SessionTransferService sessionTransferService;
+    
+    @Autowired
+    private ChatEventBus chatEventBus;
+    
+    @Autowired
+    private ImageVariantService imageVariantService;
+    
+    @Autowired
+    private GeneratedImageRepository generatedImageRepository;
+    
+    @Value("${thread.max-depth:50}")
+    private int threadMaxDepth;
+    
+    @Value("${thread.max-size:500}")
+    private int threadMaxSize;
+    
 
     
     @GetMapping("/users")
@@ -66,7 +106,14 @@ public class ChatController {
     
     @GetMapping("/sessions/{sessionId}/messages")
     public List<Message> getMessages(@PathVariable Long sessionId) {
-        return messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
+        ChatSession session = sessionRepository.findById(sessionId).orElseThrow();
+        // Opening counts as activity for archiving, otherwise a rehydrated session is archived again the next night
+        LocalDateTime now = LocalDateTime.now();
+        sessionRepository.recordOpened(sessionId, now, now.minusHours(1));
+        if (session.getArchivedAt() != null) {
+            messageArchiveService.rehydrate(session);
+        }
+        return messageRepository.findBySessionIdAndTimestampGreaterThanEqualOrderByTimestampAsc(sessionId, session.getCreatedAt());
     }
     
     @PostMapping("/sessions/{sessionId}/messages")
@@ -76,23 +123,28 @@ public class ChatController {
         Message userMessage = new Message(request.getContent(), "user");
         userMessage.setSession(session);
         
-        // Set parent message if this is a reply
+        // Set parent message if this is a reply; only its content is read, the link is a reference
+        String parentContent = null;
         if (request.getParentMessageId() != null) {
-            Message parentMessage = messageRepository.findById(request.getParentMessageId()).orElse(null);
-            if (parentMessage != null) {
-                userMessage.setParentMessage(parentMessage);
+            parentContent = messageRepository.findContentById(request.getParentMessageId()).orElse(null);
+            if (parentContent != null) {
+                userMessage.setParentMessage(messageRepository.getReferenceById(request.getParentMessageId()));
             }
         }
         
         messageRepository.save(userMessage);
+        chatEventBus.publish(sessionId, ChatEventBus.MESSAGE, userMessage.getId(), null);
         
         // Build context for AI if replying to a message
         String aiPrompt = request.getContent();
-        if (request.getParentMessageId() != null && userMessage.getParentMessage() != null) {
-            aiPrompt = "Replying to: \"" + userMessage.getParentMessage().getContent() + "\"\n\n" + request.getContent();
+        if (parentContent != null) {
+            aiPrompt = "Replying to: \"" + parentContent + "\"\n\n" + request.getContent();
         }
         
-        int maxTokens = request.getMaxTokens() != null ? request.getMaxTokens() : 2000;
+        int requestedMaxTokens = request.getMaxTokens() != null ? request.getMaxTokens() : 2000;
+        aiPrompt = tokenBudgetService.fitPrompt(aiPrompt, requestedMaxTokens);
+        int maxTokens = tokenBudgetService.clampMaxTokens(aiPrompt, requestedMaxTokens);
+        awaitRateLimit(aiPrompt, maxTokens);
         String botResponse = groqService.getChatResponse(aiPrompt, maxTokens);
         Message botMessage = new Message(botResponse, "bot");
         botMessage.setSession(session);
@@ -103,24 +155,72 @@ public class ChatController {
         }
         
         messageRepository.save(botMessage);
+        chatEventBus.publish(sessionId, ChatEventBus.MESSAGE, botMessage.getId(), null);
         
-        session.setUpdatedAt(java.time.LocalDateTime.now());
-        sessionRepository.save(session);
+        sessionRepository.updateUpdatedAt(sessionId, LocalDateTime.now());
         
         return botMessage;
     }
     
+    // Interactive calls share the Groq limits with running batches
+    private void awaitRateLimit(String prompt, int maxTokens) {
+        try {
+            rateLimiter.acquire(tokenBudgetService.countPromptTokens(prompt) + maxTokens);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the Groq rate limit");
+        }
+    }
+    
+    @GetMapping("/messages/{messageId}/thread")
+    public ResponseEntity<ThreadResponse> getThread(@PathVariable Long messageId,
+                                                    @RequestParam(defaultValue = "replies") String direction) {
+        // One level and one row past the caps, so truncation is only reported when something was actually cut off
+        List<MessageThreadNode> nodes;
+        if (direction.equals("ancestors")) {
+            nodes = messageRepository.findAncestorChain(messageId, threadMaxDepth + 1, threadMaxSize + 1);
+        } else if (direction.equals("replies")) {
+            nodes = messageRepository.findReplyTree(messageId, threadMaxDepth + 1, threadMaxSize + 1);
+        } else {
+            return ResponseEntity.badRequest().body(null);
+        }
+        
+        if (nodes.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        // Rows come breadth-first, so the extra level sits at the end and everything above it is complete
+        List<MessageThreadNode> kept = nodes.stream()
+            .filter(n -> n.getDepth() <= threadMaxDepth)
+            .limit(threadMaxSize)
+            .toList();
+        boolean truncated = kept.size() < nodes.size();
+        return ResponseEntity.ok(new ThreadResponse(messageId, direction, kept, truncated));
+    }
+    
+    @GetMapping(value = "/sessions/{sessionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToSession(@PathVariable Long sessionId,
+                                         @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                         @RequestParam(value = "lastEventId", required = false) Long lastEventIdParam) {
+        sessionRepository.findById(sessionId).orElseThrow();
+        return chatEventBus.subscribe(sessionId, lastEventId != null ? lastEventId : lastEventIdParam);
+    }
+    
     @PutMapping("/sessions/{sessionId}")
     public ChatSession updateSession(@PathVariable Long sessionId, @RequestBody SessionRequest request) {
         ChatSession session = sessionRepository.findById(sessionId).orElseThrow();
         session.setTitle(request.getTitle());
         session.setUpdatedAt(java.time.LocalDateTime.now());
-        return sessionRepository.save(session);
+        ChatSession saved = sessionRepository.save(session);
+        chatEventBus.publish(sessionId, ChatEventBus.SESSION, null, saved.getTitle());
+        return saved;
     }
     
     @DeleteMapping("/sessions/{sessionId}")
     public void deleteSession(@PathVariable Long sessionId) {
         sessionRepository.deleteById(sessionId);
+        messageArchiveService.deleteArchive(sessionId);
+        generatedImageRepository.deleteBySessionId(sessionId);
     }
     
     @GetMapping("/users/{userId}/search")
@@ -158,15 +258,21 @@ public class ChatController {
             
             ChatSession session = sessionRepository.findById(sessionId).orElseThrow();
             
-            String aiPrompt = "Analyze and summarize this document: " + file.getOriginalFilename() + "\n\nContent: " + extractedText + "\n\nProvide only your analysis and insights without repeating the document content.";
-            String aiResponse = groqService.getChatResponse(aiPrompt, 2000);
+            String aiPrompt = tokenBudgetService.fitDocument(
+                "Analyze and summarize this document: " + file.getOriginalFilename() + "\n\nContent: ",
+                extractedText,
+                "\n\nProvide only your analysis and insights without repeating the document content.",
+                2000);
+            int maxTokens = tokenBudgetService.clampMaxTokens(aiPrompt, 2000);
+            awaitRateLimit(aiPrompt, maxTokens);
+            String aiResponse = groqService.getChatResponse(aiPrompt, maxTokens);
             
             Message botMessage = new Message(aiResponse, "bot");
             botMessage.setSession(session);
             messageRepository.save(botMessage);
+            chatEventBus.publish(sessionId, ChatEventBus.MESSAGE, botMessage.getId(), null);
             
-            session.setUpdatedAt(LocalDateTime.now());
-            sessionRepository.save(session);
+            sessionRepository.updateUpdatedAt(sessionId, LocalDateTime.now());
             
             return ResponseEntity.ok(botMessage);
             
@@ -175,6 +281,94 @@ public class ChatController {
         }
     }
     
+    @PostMapping("/sessions/{sessionId}/batch")
+    public ResponseEntity<ResponseBodyEmitter> batchPrompts(@PathVariable Long sessionId, @RequestBody BatchRequest request) {
+        try {
+            ChatSession session = sessionRepository.findById(sessionId).orElseThrow();
+            
+            List<BatchService.BatchItem> items = new ArrayList<>();
+            if (request.getPrompts() != null) {
+                for (int i = 0; i < request.getPrompts().size(); i++) {
+                    String prompt = request.getPrompts().get(i);
+                    if (prompt == null || prompt.isBlank()) {
+                        throw new IllegalArgumentException("Prompt " + i + " is empty");
+                    }
+                    items.add(BatchService.BatchItem.prompt(i, prompt));
+                }
+            }
+            
+            int maxTokens = request.getMaxTokens() != null ? request.getMaxTokens() : 2000;
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(batchService.submit(session, items, maxTokens));
+        } catch (Exception e) {
+            System.err.println("Batch error: " + e.getMessage());
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+    
+    @PostMapping("/sessions/{sessionId}/batch/files")
+    public ResponseEntity<ResponseBodyEmitter> batchFiles(@PathVariable Long sessionId, @RequestParam("files") List<MultipartFile> files) {
+        try {
+            ChatSession session = sessionRepository.findById(sessionId).orElseThrow();
+            
+            // Read eagerly: the multipart temp files do not outlive the request thread
+            List<BatchService.BatchItem> items = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                if (file.isEmpty()) {
+                    throw new RuntimeException("File is empty: " + file.getOriginalFilename());
+                }
+                items.add(BatchService.BatchItem.file(i, file.getOriginalFilename(), file.getContentType(), file.getBytes()));
+            }
+            
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(batchService.submit(session, items, 2000));
+        } catch (Exception e) {
+            System.err.println("Batch error: " + e.getMessage());
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+    
+    @GetMapping("/users/{userId}/export")
+    public ResponseEntity<StreamingResponseBody> exportUser(@PathVariable Long userId) {
+        userRepository.findById(userId).orElseThrow();
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"user-" + userId + ".ndjson.gz\"")
+            .contentType(MediaType.parseMediaType("application/gzip"))
+            .body(out -> sessionTransferService.exportUser(userId, out));
+    }
+    
+    @GetMapping("/sessions/{sessionId}/export")
+    public ResponseEntity<StreamingResponseBody> exportSession(@PathVariable Long sessionId) {
+        sessionRepository.findById(sessionId).orElseThrow();
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"session-" + sessionId + ".ndjson.gz\"")
+            .contentType(MediaType.parseMediaType("application/gzip"))
+            .body(out -> sessionTransferService.exportSession(sessionId, out));
+    }
+    
+    @PostMapping("/users/{userId}/import")
+    public ResponseEntity<SessionTransferService.ImportResult> importUser(@PathVariable Long userId, InputStream body) {
+        SessionTransferService.ImportResult result = sessionTransferService.importUser(userId, body);
+        if (result.getError() != null) {
+            System.err.println("Import error: " + result.getError());
+            return ResponseEntity.badRequest().body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+    
+    @PostMapping("/sessions/{sessionId}/import")
+    public ResponseEntity<SessionTransferService.ImportResult> importSession(@PathVariable Long sessionId, InputStream body) {
+        SessionTransferService.ImportResult result = sessionTransferService.importSession(sessionId, body);
+        if (result.getError() != null) {
+            System.err.println("Import error: " + result.getError());
+            return ResponseEntity.badRequest().body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+    
     @PostMapping("/sessions/{sessionId}/generate-image")
     public ResponseEntity<Message> generateImage(@PathVariable Long sessionId, @RequestBody ImageRequest request) {
         try {
@@ -186,19 +380,22 @@ public class ChatController {
             Message userMessage = new Message("🎨 Generate image: " + request.getPrompt(), "user");
             userMessage.setSession(session);
             messageRepository.save(userMessage);
+            chatEventBus.publish(sessionId, ChatEventBus.MESSAGE, userMessage.getId(), null);
             
-            // Generate image
-            String base64Image = imageGenerationService.generateImage(request.getPrompt());
-            String imageContent = "![Generated Image](data:image/png;base64," + base64Image + ")";
+            // Generate image; the message links to its display variant instead of inlining it
+            byte[] imageBytes = imageGenerationService.generateImageBytes(request.getPrompt());
+            GeneratedImage image = imageVariantService.store(sessionId, imageBytes);
+            String imageContent = "![Generated Image](/api/images/" + image.getId() + "/" + ImageVariantService.DISPLAY + ")";
             
             // Save bot message with image
             Message botMessage = new Message(imageContent, "bot");
             botMessage.setSession(session);
             messageRepository.save(botMessage);
+            chatEventBus.publish(sessionId, ChatEventBus.IMAGE, botMessage.getId(), null);
+            imageVariantService.createVariantsAsync(image, botMessage.getId());
             
             // Update session timestamp
-            session.setUpdatedAt(LocalDateTime.now());
-            sessionRepository.save(session);
+            sessionRepository.updateUpdatedAt(sessionId, LocalDateTime.now());
             
             return ResponseEntity.ok(botMessage);
         } catch (Exception e) {
@@ -208,6 +405,52 @@ public class ChatController {
         }
     }
     
+    @GetMapping("/images/{imageId}")
+    public ResponseEntity<GeneratedImageInfo> getImageInfo(@PathVariable Long imageId) {
+        return generatedImageRepository.findInfoById(imageId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @GetMapping("/images/{imageId}/{variant}")
+    public ResponseEntity<byte[]> getImage(@PathVariable Long imageId, @PathVariable String variant) {
+        if (!variant.equals(ImageVariantService.ORIGINAL) && !variant.equals(ImageVariantService.DISPLAY)
+                && !variant.equals(ImageVariantService.THUMBNAIL)) {
+            return ResponseEntity.notFound().build();
+        }
+        GeneratedImageInfo info = generatedImageRepository.findInfoById(imageId).orElse(null);
+        if (info == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        byte[] bytes = variant.equals(ImageVariantService.ORIGINAL) ? null : imageVariantService.loadVariant(imageId, variant);
+        if (bytes != null) {
+            // Variants never change once written
+            return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .body(bytes);
+        }
+        
+        // Original requested, or the variant is not ready (or failed): serve the original
+        bytes = imageVariantService.loadVariant(imageId, ImageVariantService.ORIGINAL);
+        boolean cacheable = variant.equals(ImageVariantService.ORIGINAL) || GeneratedImage.FAILED.equals(info.getStatus());
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(info.getContentType()))
+            .cacheControl(cacheable ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable() : CacheControl.noCache())
+            .header(HttpHeaders.CONTENT_DISPOSITION, variant.equals(ImageVariantService.ORIGINAL)
+                ? "inline; filename=\"image-" + imageId + extension(info.getContentType()) + "\"" : "inline")
+            .body(bytes);
+    }
+    
+    private static String extension(String contentType) {
+        switch (contentType) {
+            case "image/jpeg": return ".jpg";
+            case "image/webp": return ".webp";
+            default: return ".png";
+        }
+    }
+    
     static class ImageRequest {
         private String prompt;
         
@@ -232,6 +475,17 @@ public class ChatController {
     
 
     
+    static class BatchRequest {
+        private List<String> prompts;
+        private Integer maxTokens;
+        
+        public List<String> getPrompts() { return prompts; }
+        public void setPrompts(List<String> prompts) { this.prompts = prompts; }
+        
+        public Integer getMaxTokens() { return maxTokens; }
+        public void setMaxTokens(Integer maxTokens) { this.maxTokens = maxTokens; }
+    }
+    
     static class SessionRequest {
         private String title;
         
@@ -254,6 +508,25 @@ public class ChatController {
         public void setAvatar(String avatar) { this.avatar = avatar; }
     }
     
+    static class ThreadResponse {
+        private Long messageId;
+        private String direction;
+        private List<MessageThreadNode> messages;
+        private boolean truncated;
+        
+        public ThreadResponse(Long messageId, String direction, List<MessageThreadNode> messages, boolean truncated) {
+            this.messageId = messageId;
+            this.direction = direction;
+            this.messages = messages;
+            this.truncated = truncated;
+        }
+        
+        public Long getMessageId() { return messageId; }
+        public String getDirection() { return direction; }
+        public List<MessageThreadNode> getMessages() { return messages; }
+        public boolean isTruncated() { return truncated; }
+    }
+    
     static class MessageSearchResult {
         private Long id;
         private String content;
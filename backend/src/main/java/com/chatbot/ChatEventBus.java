@@ -0,0 +1,407 @@
+package com.chatbot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live session updates across all backend nodes. Events are rows in
+ * {@code chat_events}; an insert trigger NOTIFYs every node, and each node
+ * fans the event out to its own SSE subscribers of that session.
+ *
+ * Every subscriber has a bounded queue drained by a small sender pool. A
+ * client that falls behind is disconnected instead of buffering without
+ * limit; it reconnects with Last-Event-ID and catches up from the table.
+ *
+ * Publishes into one session are serialized, so within a session event ids
+ * commit (and are notified) in id order. Replay from Last-Event-ID and the
+ * per-subscriber duplicate check rely on that. Across sessions ids can still
+ * commit out of order, which the listener's catch-up allows for.
+ */
+@Service
+@Lazy(false) // the listener must run on every node, and @Scheduled needs an instantiated bean
+@RegisterReflectionForBinding(ChatEventBus.ChatEvent.class)
+public class ChatEventBus {
+
+    public static final String MESSAGE = "message";
+    public static final String IMAGE = "image";
+    public static final String SESSION = "session";
+
+    private static final String CHANNEL = "chat_events";
+
+    private static final long HEARTBEAT_INTERVAL_MS = 25_000;
+
+    // First key of the per-session advisory lock taken while publishing
+    private static final int PUBLISH_LOCK_NAMESPACE = 0x63657674;
+
+    private static final String EVENT_SELECT =
+        "SELECT e.id, e.session_id, e.type, e.message_id, e.title, m.sender, m.content, m.timestamp, m.parent_message_id " +
+        "FROM chat_events e LEFT JOIN messages m ON m.id = e.message_id ";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${spring.datasource.url}")
+    private String datasourceUrl;
+
+    @Value("${spring.datasource.username:}")
+    private String datasourceUsername;
+
+    @Value("${spring.datasource.password:}")
+    private String datasourcePassword;
+
+    @Value("${events.subscriber-buffer:256}")
+    private int subscriberBuffer;
+
+    @Value("${events.replay-limit:1000}")
+    private int replayLimit;
+
+    @Value("${events.retention-hours:24}")
+    private int retentionHours;
+
+    @Value("${events.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${events.catch-up-window:1000}")
+    private long catchUpWindow;
+
+    private final Map<Long, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final RowMapper<ChatEvent> eventMapper = (rs, rowNum) -> {
+        ChatEvent event = new ChatEvent();
+        event.id = rs.getLong("id");
+        event.sessionId = rs.getLong("session_id");
+        event.type = rs.getString("type");
+        event.messageId = (Long) rs.getObject("message_id");
+        event.title = rs.getString("title");
+        event.sender = rs.getString("sender");
+        event.content = rs.getString("content");
+        Timestamp timestamp = rs.getTimestamp("timestamp");
+        event.timestamp = timestamp != null ? timestamp.toLocalDateTime() : null;
+        event.parentMessageId = (Long) rs.getObject("parent_message_id");
+        return event;
+    };
+
+    private ExecutorService senders;
+    private ScheduledExecutorService heartbeats;
+    private Thread listener;
+    private volatile boolean running;
+    private volatile long lastSeenEventId;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "events-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Own timer rather than @Scheduled: Spring's single scheduler thread is busy for as long as
+        // the nightly archive maintenance runs, and proxies drop idle streams well before it ends
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "events-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleAtFixedRate(this::sendHeartbeats, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        running = true;
+        listener = new Thread(this::listen, "events-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        listener.interrupt();
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+        subscribers.values().forEach(list -> list.forEach(s -> s.emitter.complete()));
+    }
+
+    /**
+     * Records an event and broadcasts it to every node. Failures are logged
+     * and swallowed so a chat request never fails because of the push channel.
+     */
+    public void publish(Long sessionId, String type, Long messageId, String title) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Held until commit: concurrent publishers (e.g. batch workers) into one session
+                // otherwise commit ids out of order, and a late lower id would be skipped
+                jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?, ?)", PUBLISH_LOCK_NAMESPACE, sessionId.intValue());
+                jdbcTemplate.update("INSERT INTO chat_events (session_id, type, message_id, title) VALUES (?, ?, ?, ?)",
+                    sessionId, type, messageId, title);
+            });
+        } catch (Exception e) {
+            System.err.println("Failed to publish " + type + " event for session " + sessionId + ": " + e.getMessage());
+        }
+    }
+
+    public SseEmitter subscribe(Long sessionId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(sessionId, emitter);
+
+        // Register before replaying so nothing published in between is missed;
+        // live events are held back until the replay has been queued
+        subscribers.computeIfAbsent(sessionId, id -> new CopyOnWriteArrayList<>()).add(subscriber);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        try {
+            List<ChatEvent> replay = lastEventId != null
+                ? jdbcTemplate.query(EVENT_SELECT + "WHERE e.session_id = ? AND e.id > ? ORDER BY e.id LIMIT ?",
+                    eventMapper, sessionId, lastEventId, replayLimit)
+                : List.of();
+            subscriber.finishReplay(replay);
+        } catch (RuntimeException e) {
+            unsubscribe(subscriber);
+            throw e;
+        }
+        return emitter;
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        List<Subscriber> list = subscribers.get(subscriber.sessionId);
+        if (list != null) {
+            list.remove(subscriber);
+            if (list.isEmpty()) {
+                subscribers.remove(subscriber.sessionId, list);
+            }
+        }
+    }
+
+    private void listen() {
+        long backoffMs = 1000;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(datasourceUrl, datasourceUsername, datasourcePassword)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                System.out.println("Listening for chat events");
+                catchUp();
+                backoffMs = 1000;
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(10_000);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        handleNotification(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Chat event listener disconnected: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoffMs = Math.min(backoffMs * 2, 30_000);
+            }
+        }
+    }
+
+    /**
+     * Delivers events that were published while this node was not listening.
+     * Ids of different sessions can commit out of order, so a window below
+     * the last seen id is read again; subscribers drop what they already have.
+     */
+    private void catchUp() {
+        if (lastSeenEventId == 0) {
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM chat_events", Long.class);
+            lastSeenEventId = maxId != null ? maxId : 0;
+            return;
+        }
+        List<ChatEvent> missed = jdbcTemplate.query(EVENT_SELECT + "WHERE e.id > ? ORDER BY e.id LIMIT 10000",
+            eventMapper, Math.max(0, lastSeenEventId - catchUpWindow));
+        for (ChatEvent event : missed) {
+            dispatch(event);
+        }
+    }
+
+    private void handleNotification(String payload) {
+        int separator = payload.indexOf(':');
+        long sessionId = Long.parseLong(payload.substring(0, separator));
+        long eventId = Long.parseLong(payload.substring(separator + 1));
+        lastSeenEventId = Math.max(lastSeenEventId, eventId);
+
+        // Only nodes with subscribers for the session pay for loading the message
+        if (!subscribers.containsKey(sessionId)) {
+            return;
+        }
+        List<ChatEvent> events = jdbcTemplate.query(EVENT_SELECT + "WHERE e.id = ?", eventMapper, eventId);
+        events.forEach(this::dispatch);
+    }
+
+    private void dispatch(ChatEvent event) {
+        lastSeenEventId = Math.max(lastSeenEventId, event.id);
+        List<Subscriber> list = subscribers.get(event.sessionId);
+        if (list != null) {
+            list.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    private void sendHeartbeats() {
+        // An exception escaping here would cancel all further heartbeats
+        try {
+            subscribers.values().forEach(list -> list.forEach(Subscriber::heartbeat));
+        } catch (RuntimeException e) {
+            System.err.println("Failed to send heartbeats: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelay = 3_600_000)
+    public void pruneEvents() {
+        int deleted = jdbcTemplate.update("DELETE FROM chat_events WHERE created_at < ?",
+            Timestamp.valueOf(LocalDateTime.now().minusHours(retentionHours)));
+        if (deleted > 0) {
+            System.out.println("Pruned " + deleted + " chat events");
+        }
+    }
+
+    private class Subscriber {
+        private final Long sessionId;
+        private final SseEmitter emitter;
+        private final Queue<ChatEvent> queue = new ArrayBlockingQueue<>(subscriberBuffer);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final List<ChatEvent> held = new ArrayList<>();
+        private boolean replaying = true;
+        private long lastQueuedId;
+        private volatile boolean heartbeatDue;
+        private volatile boolean closed;
+
+        Subscriber(Long sessionId, SseEmitter emitter) {
+            this.sessionId = sessionId;
+            this.emitter = emitter;
+        }
+
+        synchronized void offer(ChatEvent event) {
+            if (replaying) {
+                held.add(event);
+                return;
+            }
+            enqueue(event);
+        }
+
+        synchronized void finishReplay(List<ChatEvent> replay) {
+            replay.forEach(this::enqueue);
+            replaying = false;
+            held.forEach(this::enqueue);
+            held.clear();
+        }
+
+        void heartbeat() {
+            heartbeatDue = true;
+            scheduleDrain();
+        }
+
+        private void enqueue(ChatEvent event) {
+            // Ids of one session arrive in order (see publish), so a high-water mark is enough
+            if (closed || event.id <= lastQueuedId) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                // Too slow to keep up: drop it; the client resumes from its Last-Event-ID
+                closed = true;
+                unsubscribe(this);
+                emitter.complete();
+                return;
+            }
+            lastQueuedId = event.id;
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!closed && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                if (heartbeatDue) {
+                    heartbeatDue = false;
+                    emitter.send(SseEmitter.event().comment("keep-alive"));
+                }
+                ChatEvent event;
+                while (!closed && (event = queue.poll()) != null) {
+                    emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.id))
+                        .name(event.type)
+                        .data(event, MediaType.APPLICATION_JSON));
+                }
+            } catch (Exception e) {
+                closed = true;
+                unsubscribe(this);
+                emitter.completeWithError(e);
+            } finally {
+                draining.set(false);
+            }
+            if (!closed && (!queue.isEmpty() || heartbeatDue)) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    public static class ChatEvent {
+        private long id;
+        private Long sessionId;
+        private String type;
+        private Long messageId;
+        private String title;
+        private String sender;
+        private String content;
+        private LocalDateTime timestamp;
+        private Long parentMessageId;
+
+        public long getId() { return id; }
+        public Long getSessionId() { return sessionId; }
+        public String getType() { return type; }
+        public Long getMessageId() { return messageId; }
+        public String getTitle() { return title; }
+        public String getSender() { return sender; }
+        public String getContent() { return content; }
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public Long getParentMessageId() { return parentMessageId; }
+    }
+}
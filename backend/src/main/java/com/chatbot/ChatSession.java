@@ -20,6 +20,13 @@ public class ChatSession {
     @Column(nullable = false)
     private LocalDateTime updatedAt;
     
+    // Written only by targeted updates, so saving a stale entity cannot undo archiving or rehydration
+    @Column(insertable = false, updatable = false)
+    private LocalDateTime archivedAt;
+    
+    @Column(insertable = false, updatable = false)
+    private LocalDateTime lastOpenedAt;
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     @com.fasterxml.jackson.annotation.JsonIgnore
@@ -52,6 +59,12 @@ public class ChatSession {
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
     
+    public LocalDateTime getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(LocalDateTime archivedAt) { this.archivedAt = archivedAt; }
+    
+    public LocalDateTime getLastOpenedAt() { return lastOpenedAt; }
+    public void setLastOpenedAt(LocalDateTime lastOpenedAt) { this.lastOpenedAt = lastOpenedAt; }
+    
     public User getUser() { return user; }
     public void setUser(User user) { this.user = user; }
     
@@ -2,10 +2,33 @@ package com.chatbot;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ChatSessionRepository extends JpaRepository<ChatSession, Long> {
     List<ChatSession> findAllByOrderByUpdatedAtDesc();
     List<ChatSession> findByUserIdOrderByUpdatedAtDesc(Long userId);
+    
+    // Neither written to nor opened since the cutoff
+    @org.springframework.data.jpa.repository.Query("SELECT s FROM ChatSession s WHERE s.archivedAt IS NULL AND s.updatedAt < :cutoff "
+        + "AND (s.lastOpenedAt IS NULL OR s.lastOpenedAt < :cutoff) ORDER BY s.id")
+    List<ChatSession> findIdleSessions(@org.springframework.data.repository.query.Param("cutoff") LocalDateTime cutoff, org.springframework.data.domain.Pageable pageable);
+    
+    @org.springframework.data.jpa.repository.QueryHints(@jakarta.persistence.QueryHint(name = "org.hibernate.fetchSize", value = "100"))
+    @org.springframework.data.jpa.repository.Query("SELECT s FROM ChatSession s WHERE s.user.id = :userId ORDER BY s.createdAt ASC")
+    java.util.stream.Stream<ChatSession> streamByUserId(@org.springframework.data.repository.query.Param("userId") Long userId);
+    
+    // Touches only updated_at, so a stale entity cannot overwrite a concurrent rename
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("UPDATE ChatSession s SET s.updatedAt = :updatedAt WHERE s.id = :id")
+    int updateUpdatedAt(@org.springframework.data.repository.query.Param("id") Long id, @org.springframework.data.repository.query.Param("updatedAt") LocalDateTime updatedAt);
+    
+    // Records at most one open per session and throttle window, so reading a session stays a read
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("UPDATE ChatSession s SET s.lastOpenedAt = :openedAt WHERE s.id = :id "
+        + "AND (s.lastOpenedAt IS NULL OR s.lastOpenedAt < :since)")
+    int recordOpened(@org.springframework.data.repository.query.Param("id") Long id, @org.springframework.data.repository.query.Param("openedAt") LocalDateTime openedAt, @org.springframework.data.repository.query.Param("since") LocalDateTime since);
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
@@ -14,39 +15,55 @@ import java.nio.charset.StandardCharsets;
 public class FileProcessingService {
 
     public String extractTextFromFile(MultipartFile file) throws IOException {
-        String contentType = file.getContentType();
-        
+        return extractText(file.getContentType(), file.getBytes());
+    }
+    
+    public String extractText(String contentType, byte[] content) throws IOException {
         if (contentType == null) {
             throw new IOException("Unknown file type");
         }
         
         switch (contentType) {
             case "application/pdf":
-                return extractTextFromPDF(file);
+                return extractTextFromPDF(content);
             case "application/vnd.openxmlformats-officedocument.wordprocessingml.document":
-                return extractTextFromDOCX(file);
+                return extractTextFromDOCX(content);
             case "text/plain":
-                return extractTextFromTXT(file);
+                return extractTextFromTXT(content);
             default:
                 throw new IOException("Unsupported file type: " + contentType);
         }
     }
     
-    private String extractTextFromPDF(MultipartFile file) throws IOException {
-        try (PDDocument document = PDDocument.load(file.getInputStream())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            return stripper.getText(document);
-        }
+    private String extractTextFromPDF(byte[] content) throws IOException {
+        return PdfExtractor.extract(content);
     }
     
-    private String extractTextFromDOCX(MultipartFile file) throws IOException {
-        try (XWPFDocument document = new XWPFDocument(file.getInputStream());
-             XWPFWordExtractor extractor = new XWPFWordExtractor(document)) {
-            return extractor.getText();
+    private String extractTextFromDOCX(byte[] content) throws IOException {
+        return DocxExtractor.extract(content);
+    }
+    
+    private String extractTextFromTXT(byte[] content) {
+        return new String(content, StandardCharsets.UTF_8);
+    }
+    
+    // PDFBox and POI are only referenced from these holders, so their classes
+    // are loaded and initialized on the first upload of that type, not at boot
+    private static final class PdfExtractor {
+        static String extract(byte[] content) throws IOException {
+            try (PDDocument document = PDDocument.load(content)) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                return stripper.getText(document);
+            }
         }
     }
     
-    private String extractTextFromTXT(MultipartFile file) throws IOException {
-        return new String(file.getBytes(), StandardCharsets.UTF_8);
+    private static final class DocxExtractor {
+        static String extract(byte[] content) throws IOException {
+            try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(content));
+                 XWPFWordExtractor extractor = new XWPFWordExtractor(document)) {
+                return extractor.getText();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -2,8 +2,12 @@ package com.chatbot;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(GenBotRuntimeHints.class)
 public class GenBotApplication {
     public static void main(String[] args) {
         SpringApplication.run(GenBotApplication.class, args);
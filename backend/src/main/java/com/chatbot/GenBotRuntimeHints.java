@@ -0,0 +1,16 @@
+package com.chatbot;
+
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Resources that are loaded by path at runtime and must be kept in AOT/native builds.
+ */
+public class GenBotRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.resources().registerPattern("tokenizer/*");
+        hints.resources().registerPattern("db/migration/*.sql");
+    }
+}
@@ -0,0 +1,107 @@
+package com.chatbot;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "generated_images")
+public class GeneratedImage {
+    public static final String PROCESSING = "processing";
+    public static final String READY = "ready";
+    public static final String FAILED = "failed";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    private Long sessionId;
+    
+    @Column(nullable = false)
+    private String contentType;
+    
+    // Image bytes are never loaded through the entity; see GeneratedImageRepository
+    @Column(nullable = false)
+    @com.fasterxml.jackson.annotation.JsonIgnore
+    private byte[] original;
+    
+    @com.fasterxml.jackson.annotation.JsonIgnore
+    private byte[] display;
+    
+    @com.fasterxml.jackson.annotation.JsonIgnore
+    private byte[] thumbnail;
+    
+    private Integer width;
+    
+    private Integer height;
+    
+    @Column(nullable = false)
+    private Long originalSize;
+    
+    private Long displaySize;
+    
+    private Long thumbnailSize;
+    
+    private Long processingMs;
+    
+    @Column(nullable = false)
+    private String status;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    public GeneratedImage() {
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    public GeneratedImage(Long sessionId, String contentType, byte[] original) {
+        this();
+        this.sessionId = sessionId;
+        this.contentType = contentType;
+        this.original = original;
+        this.originalSize = (long) original.length;
+        this.status = PROCESSING;
+    }
+    
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getSessionId() { return sessionId; }
+    public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
+    
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+    
+    public byte[] getOriginal() { return original; }
+    public void setOriginal(byte[] original) { this.original = original; }
+    
+    public byte[] getDisplay() { return display; }
+    public void setDisplay(byte[] display) { this.display = display; }
+    
+    public byte[] getThumbnail() { return thumbnail; }
+    public void setThumbnail(byte[] thumbnail) { this.thumbnail = thumbnail; }
+    
+    public Integer getWidth() { return width; }
+    public void setWidth(Integer width) { this.width = width; }
+    
+    public Integer getHeight() { return height; }
+    public void setHeight(Integer height) { this.height = height; }
+    
+    public Long getOriginalSize() { return originalSize; }
+    public void setOriginalSize(Long originalSize) { this.originalSize = originalSize; }
+    
+    public Long getDisplaySize() { return displaySize; }
+    public void setDisplaySize(Long displaySize) { this.displaySize = displaySize; }
+    
+    public Long getThumbnailSize() { return thumbnailSize; }
+    public void setThumbnailSize(Long thumbnailSize) { this.thumbnailSize = thumbnailSize; }
+    
+    public Long getProcessingMs() { return processingMs; }
+    public void setProcessingMs(Long processingMs) { this.processingMs = processingMs; }
+    
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
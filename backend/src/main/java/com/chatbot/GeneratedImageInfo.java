@@ -0,0 +1,24 @@
+package com.chatbot;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata of a generated image without any of its image bytes, plus the
+ * API paths of its variants.
+ */
+public interface GeneratedImageInfo {
+    Long getId();
+    String getContentType();
+    Integer getWidth();
+    Integer getHeight();
+    Long getOriginalSize();
+    Long getDisplaySize();
+    Long getThumbnailSize();
+    Long getProcessingMs();
+    String getStatus();
+    LocalDateTime getCreatedAt();
+    
+    default String getOriginalUrl() { return "/api/images/" + getId() + "/" + ImageVariantService.ORIGINAL; }
+    default String getDisplayUrl() { return "/api/images/" + getId() + "/" + ImageVariantService.DISPLAY; }
+    default String getThumbnailUrl() { return "/api/images/" + getId() + "/" + ImageVariantService.THUMBNAIL; }
+}
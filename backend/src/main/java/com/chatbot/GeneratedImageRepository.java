@@ -0,0 +1,37 @@
+package com.chatbot;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Optional;
+
+@Repository
+public interface GeneratedImageRepository extends JpaRepository<GeneratedImage, Long> {
+    Optional<GeneratedImageInfo> findInfoById(Long id);
+    
+    @Query("SELECT g.original FROM GeneratedImage g WHERE g.id = :id")
+    Optional<byte[]> findOriginalById(@Param("id") Long id);
+    
+    @Query("SELECT g.display FROM GeneratedImage g WHERE g.id = :id")
+    Optional<byte[]> findDisplayById(@Param("id") Long id);
+    
+    @Query("SELECT g.thumbnail FROM GeneratedImage g WHERE g.id = :id")
+    Optional<byte[]> findThumbnailById(@Param("id") Long id);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM GeneratedImage g WHERE g.sessionId = :sessionId")
+    int deleteBySessionId(@Param("sessionId") Long sessionId);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE GeneratedImage g SET g.display = :display, g.thumbnail = :thumbnail, g.width = :width, g.height = :height, " +
+           "g.displaySize = :displaySize, g.thumbnailSize = :thumbnailSize, g.processingMs = :processingMs, g.status = :status WHERE g.id = :id")
+    int saveVariants(@Param("id") Long id, @Param("display") byte[] display, @Param("thumbnail") byte[] thumbnail,
+                     @Param("width") Integer width, @Param("height") Integer height,
+                     @Param("displaySize") Long displaySize, @Param("thumbnailSize") Long thumbnailSize,
+                     @Param("processingMs") Long processingMs, @Param("status") String status);
+}
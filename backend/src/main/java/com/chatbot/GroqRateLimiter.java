@@ -0,0 +1,56 @@
+package com.chatbot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Paces Groq calls to stay under the account's requests-per-minute and
+ * tokens-per-minute limits. Callers reserve a slot and then sleep outside
+ * the lock until it comes up. A limit of 0 disables that check.
+ */
+@Component
+public class GroqRateLimiter {
+
+    @Value("${groq.rate-limit.requests-per-minute:30}")
+    private int requestsPerMinute;
+
+    @Value("${groq.rate-limit.tokens-per-minute:6000}")
+    private int tokensPerMinute;
+
+    private long nextRequestAt;
+    private long nextTokensAt;
+
+    public void acquire(int tokens) throws InterruptedException {
+        tryAcquire(tokens, Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits for a slot unless it would only come up after {@code deadline}
+     * (epoch millis); in that case nothing is reserved and false is returned
+     * right away.
+     */
+    public boolean tryAcquire(int tokens, long deadline) throws InterruptedException {
+        long waitMs;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long requestSlot = requestsPerMinute > 0 ? Math.max(now, nextRequestAt) : now;
+            long tokenSlot = tokensPerMinute > 0 ? Math.max(now, nextTokensAt) : now;
+            long slot = Math.max(requestSlot, tokenSlot);
+            if (slot > deadline) {
+                return false;
+            }
+
+            if (requestsPerMinute > 0) {
+                nextRequestAt = requestSlot + 60_000L / requestsPerMinute;
+            }
+            if (tokensPerMinute > 0) {
+                nextTokensAt = tokenSlot + tokens * 60_000L / tokensPerMinute;
+            }
+            waitMs = slot - now;
+        }
+        if (waitMs > 0) {
+            Thread.sleep(waitMs);
+        }
+        return true;
+    }
+}
@@ -4,7 +4,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 import java.time.Duration;
 
 @Service
@@ -19,7 +18,7 @@ public class ImageGenerationService {
             .build();
     }
     
-    public String generateImage(String prompt) {
+    public byte[] generateImageBytes(String prompt) {
         try {
             System.out.println("Generating image for prompt: " + prompt);
             
@@ -38,7 +37,7 @@ public class ImageGenerationService {
             
             if (imageBytes != null && imageBytes.length > 0) {
                 System.out.println("Image generated successfully, size: " + imageBytes.length + " bytes");
-                return Base64.getEncoder().encodeToString(imageBytes);
+                return imageBytes;
             }
             
             throw new RuntimeException("No image data received from Pollinations API");
@@ -61,7 +60,7 @@ public class ImageGenerationService {
                 
                 if (imageBytes != null && imageBytes.length > 0) {
                     System.out.println("Alternative image generated successfully, size: " + imageBytes.length + " bytes");
-                    return Base64.getEncoder().encodeToString(imageBytes);
+                    return imageBytes;
                 }
             } catch (Exception altE) {
                 System.err.println("Alternative image generation also failed: " + altE.getMessage());
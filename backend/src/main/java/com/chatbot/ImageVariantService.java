@@ -0,0 +1,163 @@
+package com.chatbot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores generated images and produces their downscaled JPEG variants: a
+ * display size for the chat view and a small thumbnail. The original is
+ * kept for downloads.
+ *
+ * Variants are built on a small bounded pool so the generate-image request
+ * returns as soon as the original is stored. When the queue is full the
+ * submitting thread does the work itself, which slows callers down instead
+ * of piling decoded images up in memory.
+ */
+@Service
+public class ImageVariantService {
+
+    public static final String ORIGINAL = "original";
+    public static final String DISPLAY = "display";
+    public static final String THUMBNAIL = "thumbnail";
+
+    @Autowired
+    private GeneratedImageRepository generatedImageRepository;
+
+    @Autowired
+    private ChatEventBus chatEventBus;
+
+    @Value("${images.workers:2}")
+    private int workers;
+
+    @Value("${images.queue-size:32}")
+    private int queueSize;
+
+    @Value("${images.display-size:384}")
+    private int displaySize;
+
+    @Value("${images.display-quality:0.8}")
+    private float displayQuality;
+
+    @Value("${images.thumbnail-size:128}")
+    private int thumbnailSize;
+
+    @Value("${images.thumbnail-quality:0.7}")
+    private float thumbnailQuality;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            runnable -> {
+                Thread thread = new Thread(runnable, "image-variants-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Stores the original image. Its variants are created by
+     * {@link #createVariantsAsync} once the message showing it is saved.
+     */
+    public GeneratedImage store(Long sessionId, byte[] original) {
+        return generatedImageRepository.save(new GeneratedImage(sessionId, detectContentType(original), original));
+    }
+
+    /**
+     * Queues creation of the variants. When they are ready an image event
+     * for {@code messageId} is published, so subscribers can reload it.
+     */
+    public void createVariantsAsync(GeneratedImage image, Long messageId) {
+        Long imageId = image.getId();
+        Long sessionId = image.getSessionId();
+        byte[] original = image.getOriginal();
+        executor.execute(() -> createVariants(imageId, sessionId, messageId, original));
+    }
+
+    /**
+     * Queues creation of the variants of an already stored image that no
+     * message event is waiting for, such as an imported one. The worker
+     * reads the original back, so callers need not keep it in memory.
+     */
+    public void createVariantsAsync(Long imageId) {
+        executor.execute(() -> generatedImageRepository.findOriginalById(imageId)
+            .ifPresent(original -> createVariants(imageId, null, null, original)));
+    }
+
+    private void createVariants(Long imageId, Long sessionId, Long messageId, byte[] original) {
+        long start = System.nanoTime();
+        try {
+            BufferedImage source = ImageResizer.read(original);
+            byte[] display = ImageResizer.toJpeg(source, displaySize, displayQuality);
+            byte[] thumbnail = ImageResizer.toJpeg(source, thumbnailSize, thumbnailQuality);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            generatedImageRepository.saveVariants(imageId, display, thumbnail, source.getWidth(), source.getHeight(),
+                (long) display.length, (long) thumbnail.length, elapsedMs, GeneratedImage.READY);
+            System.out.println("Image " + imageId + " variants: original " + original.length + " bytes, display "
+                + display.length + " bytes (" + reduction(original.length, display.length) + "% smaller), thumbnail "
+                + thumbnail.length + " bytes, " + elapsedMs + " ms");
+            if (messageId != null) {
+                chatEventBus.publish(sessionId, ChatEventBus.IMAGE, messageId, null);
+            }
+        } catch (Exception e) {
+            // The original is still served in place of the variants
+            System.err.println("Failed to create variants for image " + imageId + ": " + e.getMessage());
+            generatedImageRepository.saveVariants(imageId, null, null, null, null, null, null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), GeneratedImage.FAILED);
+        }
+    }
+
+    /**
+     * Returns the bytes of the requested variant, or null if it does not
+     * exist (yet).
+     */
+    public byte[] loadVariant(Long imageId, String variant) {
+        switch (variant) {
+            case ORIGINAL:
+                return generatedImageRepository.findOriginalById(imageId).orElse(null);
+            case DISPLAY:
+                return generatedImageRepository.findDisplayById(imageId).orElse(null);
+            case THUMBNAIL:
+                return generatedImageRepository.findThumbnailById(imageId).orElse(null);
+            default:
+                throw new IllegalArgumentException("Unknown image variant: " + variant);
+        }
+    }
+
+    private static long reduction(long originalSize, long size) {
+        return originalSize > 0 ? Math.round(100.0 * (originalSize - size) / originalSize) : 0;
+    }
+
+    private static String detectContentType(byte[] bytes) {
+        if (bytes.length >= 3 && (bytes[0] & 0xff) == 0xff && (bytes[1] & 0xff) == 0xd8 && (bytes[2] & 0xff) == 0xff) {
+            return "image/jpeg";
+        }
+        if (bytes.length >= 4 && (bytes[0] & 0xff) == 0x89 && bytes[1] == 'P' && bytes[2] == 'N' && bytes[3] == 'G') {
+            return "image/png";
+        }
+        if (bytes.length >= 12 && bytes[0] == 'R' && bytes[1] == 'I' && bytes[2] == 'F' && bytes[3] == 'F'
+                && bytes[8] == 'W' && bytes[9] == 'E' && bytes[10] == 'B' && bytes[11] == 'P') {
+            return "image/webp";
+        }
+        return "image/png";
+    }
+}
@@ -0,0 +1,346 @@
+package com.chatbot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-level BPE tokenizer for the Llama 3 vocabulary (tiktoken format: one
+ * "base64(token) rank" pair per line). Counting does not build token lists;
+ * all scratch space is per-thread and reused between calls.
+ *
+ * If no vocabulary is supplied the tokenizer falls back to an estimate of
+ * roughly four UTF-8 bytes per token, split on the same pre-tokenizer pieces.
+ */
+public class LlamaTokenizer {
+
+    // Pre-tokenizer used by Llama 3 (same split as tiktoken's cl100k/o200k family)
+    private static final Pattern PIECE_PATTERN = Pattern.compile(
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+        Pattern.UNICODE_CHARACTER_CLASS);
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+
+    // BPE on one piece is quadratic, and \p{L}+ can match megabytes of extracted
+    // text. Longer pieces are merged in chunks; vocabulary tokens are far shorter.
+    private static final int MAX_PIECE_CHARS = 256;
+
+    // Token bytes are packed into one pool; the hash table maps slices of it to ranks
+    private final byte[] pool;
+    private final int[] tokenOffset;
+    private final int[] tokenLength;
+    private final int[] tokenRank;
+    private final int[] table;
+    private final int mask;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private LlamaTokenizer(byte[] pool, int[] tokenOffset, int[] tokenLength, int[] tokenRank, int tokenCount) {
+        this.pool = pool;
+        this.tokenOffset = tokenOffset;
+        this.tokenLength = tokenLength;
+        this.tokenRank = tokenRank;
+
+        if (tokenCount == 0) {
+            this.table = null;
+            this.mask = 0;
+            return;
+        }
+
+        int capacity = Integer.highestOneBit(tokenCount * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(table, -1);
+        for (int i = 0; i < tokenCount; i++) {
+            int slot = hash(pool, tokenOffset[i], tokenLength[i]) & mask;
+            while (table[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+        }
+    }
+
+    /**
+     * Loads a tiktoken-format vocabulary ("base64 rank" per line).
+     */
+    public static LlamaTokenizer load(InputStream in) throws IOException {
+        byte[] pool = new byte[1 << 20];
+        int[] offsets = new int[1 << 17];
+        int[] lengths = new int[1 << 17];
+        int[] ranks = new int[1 << 17];
+        int count = 0;
+        int poolSize = 0;
+
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] token = decoder.decode(line.substring(0, space));
+                int rank = Integer.parseInt(line.substring(space + 1).trim());
+
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                    ranks = Arrays.copyOf(ranks, count * 2);
+                }
+                if (poolSize + token.length > pool.length) {
+                    pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + token.length));
+                }
+                System.arraycopy(token, 0, pool, poolSize, token.length);
+                offsets[count] = poolSize;
+                lengths[count] = token.length;
+                ranks[count] = rank;
+                poolSize += token.length;
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            throw new IOException("Tokenizer vocabulary is empty");
+        }
+        return new LlamaTokenizer(Arrays.copyOf(pool, poolSize), offsets, lengths, ranks, count);
+    }
+
+    /**
+     * Tokenizer without a vocabulary; counts are estimates.
+     */
+    public static LlamaTokenizer approximate() {
+        return new LlamaTokenizer(new byte[0], new int[0], new int[0], new int[0], 0);
+    }
+
+    public boolean isExact() {
+        return table != null;
+    }
+
+    public int countTokens(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        Scratch s = scratch.get();
+        Matcher matcher = PIECE_PATTERN.matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            int end = matcher.end();
+            for (int start = matcher.start(); start < end; start = chunkEnd(text, start, end)) {
+                count += countPiece(s, text, start, chunkEnd(text, start, end));
+            }
+        }
+        return count;
+    }
+
+    public int[] encode(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return new int[0];
+        }
+        if (!isExact()) {
+            throw new IllegalStateException("Tokenizer vocabulary is not loaded");
+        }
+        Scratch s = scratch.get();
+        Matcher matcher = PIECE_PATTERN.matcher(text);
+        int[] out = new int[Math.max(16, text.length() / 3)];
+        int size = 0;
+        while (matcher.find()) {
+            int end = matcher.end();
+            for (int start = matcher.start(); start < end; start = chunkEnd(text, start, end)) {
+                int parts = mergePiece(s, text, start, chunkEnd(text, start, end));
+                if (size + parts > out.length) {
+                    out = Arrays.copyOf(out, Math.max(out.length * 2, size + parts));
+                }
+                for (int i = 0; i < parts; i++) {
+                    int from = s.bounds[i];
+                    out[size++] = lookup(s.bytes, from, s.bounds[i + 1] - from);
+                }
+            }
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /**
+     * Returns the longest prefix of {@code text}, cut on a pre-tokenizer
+     * boundary, that encodes to at most {@code maxTokens} tokens.
+     */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        if (maxTokens <= 0) {
+            return "";
+        }
+        Scratch s = scratch.get();
+        Matcher matcher = PIECE_PATTERN.matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            int end = matcher.end();
+            for (int start = matcher.start(); start < end; start = chunkEnd(text, start, end)) {
+                count += countPiece(s, text, start, chunkEnd(text, start, end));
+                if (count > maxTokens) {
+                    return text.substring(0, start);
+                }
+            }
+        }
+        return text;
+    }
+
+    /**
+     * End of the chunk of a piece that starts at {@code start}; never splits
+     * a surrogate pair.
+     */
+    private static int chunkEnd(CharSequence text, int start, int end) {
+        if (end - start <= MAX_PIECE_CHARS) {
+            return end;
+        }
+        int chunkEnd = start + MAX_PIECE_CHARS;
+        return Character.isLowSurrogate(text.charAt(chunkEnd)) ? chunkEnd - 1 : chunkEnd;
+    }
+
+    private int countPiece(Scratch s, CharSequence text, int start, int end) {
+        if (!isExact()) {
+            int length = encodeUtf8(s, text, start, end);
+            return Math.max(1, (length + 3) / 4);
+        }
+        return mergePiece(s, text, start, end);
+    }
+
+    /**
+     * Runs BPE over one piece. On return {@code s.bounds[0..n]} holds the
+     * byte boundaries of the n resulting tokens; n is returned.
+     */
+    private int mergePiece(Scratch s, CharSequence text, int start, int end) {
+        int length = encodeUtf8(s, text, start, end);
+        byte[] bytes = s.bytes;
+        s.ensureParts(length + 1);
+        int[] bounds = s.bounds;
+        int[] ranks = s.ranks;
+
+        // Most pieces are a single word that is already in the vocabulary
+        if (lookup(bytes, 0, length) >= 0) {
+            bounds[0] = 0;
+            bounds[1] = length;
+            return 1;
+        }
+
+        int n = length;
+        for (int i = 0; i <= n; i++) {
+            bounds[i] = i;
+        }
+        for (int i = 0; i < n - 1; i++) {
+            ranks[i] = rankOf(bytes, bounds[i], bounds[i + 2]);
+        }
+
+        // ranks[i] is the rank of merging parts i and i+1
+        while (n > 1) {
+            int best = NO_RANK;
+            int at = -1;
+            for (int i = 0; i < n - 1; i++) {
+                if (ranks[i] < best) {
+                    best = ranks[i];
+                    at = i;
+                }
+            }
+            if (at < 0) {
+                break;
+            }
+
+            System.arraycopy(bounds, at + 2, bounds, at + 1, n - at - 1);
+            System.arraycopy(ranks, at + 1, ranks, at, n - at - 2);
+            n--;
+
+            if (at < n - 1) {
+                ranks[at] = rankOf(bytes, bounds[at], bounds[at + 2]);
+            }
+            if (at > 0) {
+                ranks[at - 1] = rankOf(bytes, bounds[at - 1], bounds[at + 1]);
+            }
+        }
+        return n;
+    }
+
+    private int rankOf(byte[] bytes, int from, int to) {
+        int rank = lookup(bytes, from, to - from);
+        return rank < 0 ? NO_RANK : rank;
+    }
+
+    private int lookup(byte[] bytes, int offset, int length) {
+        if (table == null) {
+            return -1;
+        }
+        int slot = hash(bytes, offset, length) & mask;
+        while (true) {
+            int token = table[slot];
+            if (token == -1) {
+                return -1;
+            }
+            if (tokenLength[token] == length
+                    && Arrays.equals(pool, tokenOffset[token], tokenOffset[token] + length, bytes, offset, offset + length)) {
+                return tokenRank[token];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int encodeUtf8(Scratch s, CharSequence text, int start, int end) {
+        s.ensureBytes((end - start) * 3);
+        byte[] out = s.bytes;
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | (c >> 6));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                out[n++] = (byte) (0xF0 | (cp >> 18));
+                out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[n++] = (byte) '?';
+            } else {
+                out[n++] = (byte) (0xE0 | (c >> 12));
+                out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    private static final class Scratch {
+        byte[] bytes = new byte[256];
+        int[] bounds = new int[257];
+        int[] ranks = new int[257];
+
+        void ensureBytes(int size) {
+            if (bytes.length < size) {
+                bytes = new byte[Math.max(size, bytes.length * 2)];
+            }
+        }
+
+        void ensureParts(int size) {
+            if (bounds.length < size) {
+                int capacity = Math.max(size, bounds.length * 2);
+                bounds = new int[capacity];
+                ranks = new int[capacity];
+            }
+        }
+    }
+}
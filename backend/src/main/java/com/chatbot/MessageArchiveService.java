@@ -0,0 +1,322 @@
+package com.chatbot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves the messages of idle sessions out of the hot {@code messages} table
+ * into one gzip-compressed NDJSON file per session, and puts them back the
+ * next time the session is opened. Also keeps monthly partitions created
+ * ahead of time.
+ *
+ * {@code archive.dir} must be storage shared by all nodes and kept across
+ * redeploys: a session can be archived on one node and opened on another.
+ * Maintenance runs on one node at a time under a Postgres advisory lock.
+ */
+@Service
+@Lazy(false) // @Scheduled is only picked up on instantiated beans, even in the lazy fast-startup profile
+public class MessageArchiveService {
+
+    private static final int PARTITION_MONTHS_AHEAD = 2;
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    // Key of the cluster-wide advisory lock held while maintenance runs
+    private static final long MAINTENANCE_LOCK_ID = 7_326_110_529L;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${archive.after-days:90}")
+    private int afterDays;
+
+    @Value("${archive.dir:data/archive}")
+    private String archiveDir;
+
+    @Scheduled(cron = "${archive.cron:0 30 3 * * *}")
+    public void runMaintenance() {
+        // Session-level advisory lock: held on this connection while the work runs on others
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (!advisoryLock(connection, "pg_try_advisory_lock")) {
+                System.out.println("Archive maintenance is running on another node, skipping");
+                return null;
+            }
+            try {
+                ensurePartitions();
+                if (enabled) {
+                    archiveIdleSessions();
+                }
+            } finally {
+                advisoryLock(connection, "pg_advisory_unlock");
+            }
+            return null;
+        });
+    }
+
+    private static boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?)")) {
+            statement.setLong(1, MAINTENANCE_LOCK_ID);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    public void ensurePartitions() {
+        LocalDate month = LocalDate.now().withDayOfMonth(1);
+        for (int i = 0; i <= PARTITION_MONTHS_AHEAD; i++) {
+            jdbcTemplate.queryForList("SELECT create_message_partition(?)", java.sql.Date.valueOf(month.plusMonths(i)));
+        }
+    }
+
+    public void archiveIdleSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        List<ChatSession> sessions;
+        int archived = 0;
+        do {
+            sessions = sessionRepository.findIdleSessions(cutoff, org.springframework.data.domain.PageRequest.of(0, 100));
+            for (ChatSession session : sessions) {
+                try {
+                    if (archiveSession(session, cutoff)) {
+                        archived++;
+                    }
+                } catch (Exception e) {
+                    System.err.println("Failed to archive session " + session.getId() + ": " + e.getMessage());
+                    return;
+                }
+            }
+        } while (sessions.size() == 100);
+
+        if (archived > 0) {
+            System.out.println("Archived " + archived + " idle sessions");
+        }
+    }
+
+    /**
+     * Archives the session unless it was updated or opened after
+     * {@code idleBefore} in the meantime. Returns whether it was archived.
+     */
+    public boolean archiveSession(ChatSession session, LocalDateTime idleBefore) throws IOException {
+        // Write to a temp file first so a crash never leaves a partial archive behind
+        Path target = archivePath(session.getId());
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), "session-" + session.getId(), ".tmp");
+        long maxId;
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+            maxId = writeArchive(session, writer);
+        } catch (IOException | UncheckedIOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Targeted update rather than saving the entity, so a rename made since selection
+        // survives and a session that was written to or opened again is left alone.
+        // Messages written after the snapshot above stay in the hot table.
+        boolean archived = transactionTemplate.execute(status -> {
+            int updated = jdbcTemplate.update(
+                "UPDATE chat_sessions SET archived_at = ? WHERE id = ? AND archived_at IS NULL AND updated_at < ? "
+                    + "AND (last_opened_at IS NULL OR last_opened_at < ?)",
+                Timestamp.valueOf(LocalDateTime.now()), session.getId(), Timestamp.valueOf(idleBefore), Timestamp.valueOf(idleBefore));
+            if (updated == 0) {
+                return false;
+            }
+            if (maxId > 0) {
+                messageRepository.deleteBySessionIdUpTo(session.getId(), maxId);
+            }
+            return true;
+        });
+        if (!archived) {
+            Files.deleteIfExists(target);
+        }
+        return archived;
+    }
+
+    private long writeArchive(ChatSession session, BufferedWriter writer) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> {
+            long maxId = 0;
+            try (Stream<Message> messages = messageRepository.streamAllBySessionId(session.getId())) {
+                for (Message message : (Iterable<Message>) messages::iterator) {
+                    writer.write(objectMapper.writeValueAsString(ArchivedMessage.from(message)));
+                    writer.write('\n');
+                    maxId = Math.max(maxId, message.getId());
+                    entityManager.detach(message);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return maxId;
+        });
+    }
+
+    /**
+     * Loads an archived session back into the messages table with its
+     * original ids, so reply links keep working. Fails, leaving the session
+     * archived, if the archive file is not found.
+     */
+    public void rehydrate(ChatSession session) {
+        long start = System.currentTimeMillis();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // Row lock so two tabs opening the same session do not both insert it
+            Timestamp archivedAt = jdbcTemplate.queryForObject(
+                "SELECT archived_at FROM chat_sessions WHERE id = ? FOR UPDATE", Timestamp.class, session.getId());
+            if (archivedAt == null) {
+                return;
+            }
+            List<ArchivedMessage> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            readArchive(session.getId(), message -> {
+                batch.add(message);
+                if (batch.size() == INSERT_BATCH_SIZE) {
+                    insert(session.getId(), batch);
+                    batch.clear();
+                }
+            });
+            insert(session.getId(), batch);
+            jdbcTemplate.update("UPDATE chat_sessions SET archived_at = NULL WHERE id = ?", session.getId());
+            session.setArchivedAt(null);
+        });
+
+        deleteArchive(session.getId());
+        System.out.println("Rehydrated session " + session.getId() + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Streams the archived messages of a session, oldest first. Throws if the
+     * archive file is missing, which usually means {@code archive.dir} is not
+     * shared between nodes or did not survive a redeploy.
+     */
+    public void readArchive(Long sessionId, Consumer<ArchivedMessage> consumer) {
+        Path path = archivePath(sessionId);
+        if (!Files.exists(path)) {
+            throw new IllegalStateException("Archive file " + path.toAbsolutePath() + " of session " + sessionId
+                + " is missing; archive.dir must be shared, persistent storage");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    consumer.accept(objectMapper.readValue(line, ArchivedMessage.class));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void deleteArchive(Long sessionId) {
+        try {
+            Files.deleteIfExists(archivePath(sessionId));
+        } catch (IOException e) {
+            System.err.println("Failed to delete archive for session " + sessionId + ": " + e.getMessage());
+        }
+    }
+
+    private void insert(Long sessionId, List<ArchivedMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO messages (id, content, sender, timestamp, session_id, parent_message_id) VALUES (?, ?, ?, ?, ?, ?)",
+            batch, batch.size(), (ps, message) -> {
+                ps.setLong(1, message.getId());
+                ps.setString(2, message.getContent());
+                ps.setString(3, message.getSender());
+                ps.setTimestamp(4, Timestamp.valueOf(message.getTimestamp()));
+                ps.setLong(5, sessionId);
+                ps.setObject(6, message.getParentMessageId());
+            });
+    }
+
+    private Path archivePath(Long sessionId) {
+        return Paths.get(archiveDir, "session-" + sessionId + ".ndjson.gz");
+    }
+
+    public static class ArchivedMessage {
+        private Long id;
+        private String content;
+        private String sender;
+        private LocalDateTime timestamp;
+        private Long parentMessageId;
+
+        static ArchivedMessage from(Message message) {
+            ArchivedMessage archived = new ArchivedMessage();
+            archived.id = message.getId();
+            archived.content = message.getContent();
+            archived.sender = message.getSender();
+            archived.timestamp = message.getTimestamp();
+            archived.parentMessageId = message.getParentMessage() != null ? message.getParentMessage().getId() : null;
+            return archived;
+        }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public String getContent() { return content; }
+        public void setContent(String content) { this.content = content; }
+
+        public String getSender() { return sender; }
+        public void setSender(String sender) { this.sender = sender; }
+
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+        public Long getParentMessageId() { return parentMessageId; }
+        public void setParentMessageId(Long parentMessageId) { this.parentMessageId = parentMessageId; }
+    }
+}
@@ -2,6 +2,7 @@ package com.chatbot;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -9,6 +10,64 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findAllByOrderByTimestampAsc();
     List<Message> findBySessionIdOrderByTimestampAsc(Long sessionId);
     
+    // The lower bound lets Postgres prune the monthly partitions older than the session
+    List<Message> findBySessionIdAndTimestampGreaterThanEqualOrderByTimestampAsc(Long sessionId, LocalDateTime since);
+    
+    // Cursor-backed read for exports and archiving; needs an open (read-only) transaction
+    @org.springframework.data.jpa.repository.QueryHints(@jakarta.persistence.QueryHint(name = "org.hibernate.fetchSize", value = "200"))
+    @org.springframework.data.jpa.repository.Query("SELECT m FROM Message m WHERE m.session.id = :sessionId AND m.timestamp >= :since ORDER BY m.timestamp ASC")
+    java.util.stream.Stream<Message> streamBySessionId(@org.springframework.data.repository.query.Param("sessionId") Long sessionId, @org.springframework.data.repository.query.Param("since") LocalDateTime since);
+    
+    // Every message of the session regardless of timestamp; the archiver has to snapshot exactly what it deletes
+    @org.springframework.data.jpa.repository.QueryHints(@jakarta.persistence.QueryHint(name = "org.hibernate.fetchSize", value = "200"))
+    @org.springframework.data.jpa.repository.Query("SELECT m FROM Message m WHERE m.session.id = :sessionId ORDER BY m.timestamp ASC")
+    java.util.stream.Stream<Message> streamAllBySessionId(@org.springframework.data.repository.query.Param("sessionId") Long sessionId);
+    
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("DELETE FROM Message m WHERE m.session.id = :sessionId AND m.id <= :maxId")
+    int deleteBySessionIdUpTo(@org.springframework.data.repository.query.Param("sessionId") Long sessionId, @org.springframework.data.repository.query.Param("maxId") Long maxId);
+    
+    @org.springframework.data.jpa.repository.Query("SELECT m.content FROM Message m WHERE m.id = :id")
+    java.util.Optional<String> findContentById(@org.springframework.data.repository.query.Param("id") Long id);
+    
+    // No ORDER BY: Postgres then stops the recursion as soon as LIMIT rows are produced.
+    // Rows come out breadth-first (by depth) because of how the working table is expanded.
+    @org.springframework.data.jpa.repository.Query(nativeQuery = true, value = """
+        WITH RECURSIVE thread AS (
+            SELECT m.id, m.parent_message_id, m.sender, m.content, m.timestamp, 0 AS depth
+            FROM messages m
+            WHERE m.id = :id
+          UNION ALL
+            SELECT c.id, c.parent_message_id, c.sender, c.content, c.timestamp, t.depth + 1
+            FROM messages c
+            JOIN thread t ON c.parent_message_id = t.id
+            WHERE t.depth < :maxDepth
+        )
+        SELECT id AS "id", parent_message_id AS "parentMessageId", sender AS "sender",
+               content AS "content", timestamp AS "timestamp", depth AS "depth"
+        FROM thread
+        LIMIT :maxSize
+        """)
+    List<MessageThreadNode> findReplyTree(@org.springframework.data.repository.query.Param("id") Long id, @org.springframework.data.repository.query.Param("maxDepth") int maxDepth, @org.springframework.data.repository.query.Param("maxSize") int maxSize);
+    
+    @org.springframework.data.jpa.repository.Query(nativeQuery = true, value = """
+        WITH RECURSIVE thread AS (
+            SELECT m.id, m.parent_message_id, m.sender, m.content, m.timestamp, 0 AS depth
+            FROM messages m
+            WHERE m.id = :id
+          UNION ALL
+            SELECT p.id, p.parent_message_id, p.sender, p.content, p.timestamp, t.depth + 1
+            FROM messages p
+            JOIN thread t ON p.id = t.parent_message_id
+            WHERE t.depth < :maxDepth
+        )
+        SELECT id AS "id", parent_message_id AS "parentMessageId", sender AS "sender",
+               content AS "content", timestamp AS "timestamp", depth AS "depth"
+        FROM thread
+        LIMIT :maxSize
+        """)
+    List<MessageThreadNode> findAncestorChain(@org.springframework.data.repository.query.Param("id") Long id, @org.springframework.data.repository.query.Param("maxDepth") int maxDepth, @org.springframework.data.repository.query.Param("maxSize") int maxSize);
+    
     @org.springframework.data.jpa.repository.Query("SELECT m FROM Message m WHERE m.session.user.id = :userId AND LOWER(m.content) LIKE LOWER(CONCAT('%', :searchTerm, '%')) ORDER BY m.timestamp DESC")
     List<Message> searchMessagesByUser(@org.springframework.data.repository.query.Param("userId") Long userId, @org.springframework.data.repository.query.Param("searchTerm") String searchTerm);
 }
\ No newline at end of file
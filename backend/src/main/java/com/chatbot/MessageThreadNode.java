@@ -0,0 +1,16 @@
+package com.chatbot;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat row of a reply thread, as returned by the recursive thread queries.
+ * Depth is the distance from the message the thread was requested for.
+ */
+public interface MessageThreadNode {
+    Long getId();
+    Long getParentMessageId();
+    String getSender();
+    String getContent();
+    LocalDateTime getTimestamp();
+    Integer getDepth();
+}
@@ -0,0 +1,508 @@
+package com.chatbot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export and import of chat history as gzip-compressed NDJSON. A file is a
+ * sequence of {"type":"session",...} lines, each followed by the
+ * {"type":"message",...} lines of that session in timestamp order. A
+ * generated image linked from a message is written once per session as an
+ * {"type":"image",...} line with the base64 original, ahead of the first
+ * message that links to it; an import stores it as a new image and points
+ * the links at that copy.
+ *
+ * Both directions hold at most one batch of rows in memory: exports read
+ * through a database cursor and detach each entity once written, imports
+ * parse line by line and insert in JDBC batches.
+ *
+ * Each imported session is committed on its own, so a bad line only loses
+ * the session it belongs to; the result reports what was committed before
+ * it. Timestamps in the future are imported as the current time.
+ */
+@Service
+public class SessionTransferService {
+
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private static final Pattern IMAGE_LINK = Pattern.compile("/api/images/(\\d{1,18})\\b");
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private GeneratedImageRepository generatedImageRepository;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public void exportUser(Long userId, OutputStream out) throws IOException {
+        export(out, writer -> {
+            try (Stream<ChatSession> sessions = sessionRepository.streamByUserId(userId)) {
+                for (ChatSession session : (Iterable<ChatSession>) sessions::iterator) {
+                    writeSession(session, writer);
+                    entityManager.detach(session);
+                }
+            }
+        });
+    }
+
+    public void exportSession(Long sessionId, OutputStream out) throws IOException {
+        export(out, writer -> writeSession(sessionRepository.findById(sessionId).orElseThrow(), writer));
+    }
+
+    private void export(OutputStream out, ExportBody body) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        try {
+            readOnly.executeWithoutResult(status -> body.write(writer));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        gzip.finish();
+    }
+
+    private void writeSession(ChatSession session, Writer writer) {
+        writeLine(writer, SessionRecord.from(session));
+        Set<Long> writtenImages = new HashSet<>();
+
+        // Archived sessions are exported straight from their archive file
+        if (session.getArchivedAt() != null) {
+            messageArchiveService.readArchive(session.getId(), archived -> {
+                writeImages(archived.getContent(), writtenImages, writer);
+                writeLine(writer, MessageRecord.from(archived, session.getId()));
+            });
+        }
+        try (Stream<Message> messages = messageRepository.streamBySessionId(session.getId(), session.getCreatedAt())) {
+            for (Message message : (Iterable<Message>) messages::iterator) {
+                writeImages(message.getContent(), writtenImages, writer);
+                writeLine(writer, MessageRecord.from(message, session.getId()));
+                entityManager.detach(message);
+            }
+        }
+    }
+
+    private void writeImages(String content, Set<Long> writtenImages, Writer writer) {
+        if (content == null) {
+            return;
+        }
+        Matcher matcher = IMAGE_LINK.matcher(content);
+        while (matcher.find()) {
+            Long imageId = Long.valueOf(matcher.group(1));
+            if (!writtenImages.add(imageId)) {
+                continue;
+            }
+            generatedImageRepository.findInfoById(imageId).ifPresent(info ->
+                generatedImageRepository.findOriginalById(imageId).ifPresent(original ->
+                    writeLine(writer, ImageRecord.from(info, original))));
+        }
+    }
+
+    private void writeLine(Writer writer, Object record) {
+        try {
+            writer.write(objectMapper.writeValueAsString(record));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Imports every session in the file as a new session of the user.
+     */
+    public ImportResult importUser(Long userId, InputStream in) {
+        User user = userRepository.findById(userId).orElseThrow();
+        return importStream(in, user, null);
+    }
+
+    /**
+     * Imports all messages in the file into an existing session; session
+     * lines in the file are ignored. The import is all or nothing.
+     */
+    public ImportResult importSession(Long sessionId, InputStream in) {
+        ChatSession session = sessionRepository.findById(sessionId).orElseThrow();
+        return importStream(in, null, session);
+    }
+
+    private ImportResult importStream(InputStream in, User user, ChatSession targetSession) {
+        ImportResult result = new ImportResult();
+        MessageBatch batch = new MessageBatch();
+        PlatformTransactionManager transactionManager = transactionTemplate.getTransactionManager();
+        ChatSession currentSession = targetSession;
+        // Repository and JdbcTemplate calls below join this transaction
+        TransactionStatus transaction = targetSession != null
+            ? transactionManager.getTransaction(TransactionDefinition.withDefaults()) : null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(decompress(in), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode node = objectMapper.readTree(line);
+                String type = node.path("type").asText();
+
+                if (type.equals("session")) {
+                    if (targetSession != null) {
+                        continue;
+                    }
+                    if (transaction != null) {
+                        commitSession(transactionManager, transaction, currentSession, batch, result, false);
+                    }
+                    transaction = transactionManager.getTransaction(TransactionDefinition.withDefaults());
+                    batch.startSession();
+                    SessionRecord record = objectMapper.treeToValue(node, SessionRecord.class);
+                    ChatSession session = new ChatSession(record.getTitle() != null ? record.getTitle() : "Imported chat");
+                    if (record.getCreatedAt() != null) {
+                        session.setCreatedAt(notInFuture(record.getCreatedAt()));
+                    }
+                    if (record.getUpdatedAt() != null) {
+                        session.setUpdatedAt(notInFuture(record.getUpdatedAt()));
+                    }
+                    session.setUser(user);
+                    currentSession = sessionRepository.save(session);
+                } else if (type.equals("image")) {
+                    if (currentSession == null) {
+                        throw new IOException("Image line before any session line");
+                    }
+                    ImageRecord record = objectMapper.treeToValue(node, ImageRecord.class);
+                    if (record.getData() == null || record.getData().length == 0) {
+                        throw new IOException("Image line without data");
+                    }
+                    GeneratedImage image = imageVariantService.store(currentSession.getId(), record.getData());
+                    entityManager.detach(image);
+                    batch.addImage(record.getId(), image.getId());
+                } else if (type.equals("message")) {
+                    if (currentSession == null) {
+                        throw new IOException("Message line before any session line");
+                    }
+                    batch.add(objectMapper.treeToValue(node, MessageRecord.class), currentSession.getId());
+                }
+            }
+
+            if (transaction != null) {
+                commitSession(transactionManager, transaction, currentSession, batch, result, targetSession != null);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (transaction != null && !transaction.isCompleted()) {
+                transactionManager.rollback(transaction);
+            }
+            result.error = e.getMessage();
+        }
+        return result;
+    }
+
+    /**
+     * Writes what is left of the session's messages, fixes up its timestamps
+     * with targeted updates, so a concurrent rename is kept, and commits.
+     */
+    private void commitSession(PlatformTransactionManager transactionManager, TransactionStatus transaction,
+                               ChatSession session, MessageBatch batch, ImportResult result, boolean existing) {
+        batch.flush();
+        // Reads are bounded below by createdAt, so the session has to start no later than its oldest message
+        LocalDateTime oldest = batch.sessionOldest;
+        if (oldest != null && oldest.isBefore(session.getCreatedAt())) {
+            jdbcTemplate.update("UPDATE chat_sessions SET created_at = ? WHERE id = ?", Timestamp.valueOf(oldest), session.getId());
+            session.setCreatedAt(oldest);
+        }
+        if (existing) {
+            sessionRepository.updateUpdatedAt(session.getId(), LocalDateTime.now());
+        }
+        transactionManager.commit(transaction);
+
+        if (!existing) {
+            result.sessions++;
+        }
+        result.messages += batch.sessionMessages;
+        result.images += batch.sessionImages.size();
+        // Only committed images get variants
+        batch.sessionImages.forEach(imageId -> imageVariantService.createVariantsAsync(imageId));
+    }
+
+    // A future timestamp would land in messages_default, where it blocks creating that month's partition
+    private static LocalDateTime notInFuture(LocalDateTime timestamp) {
+        LocalDateTime now = LocalDateTime.now();
+        return timestamp.isAfter(now) ? now : timestamp;
+    }
+
+    private static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        boolean gzip = first == 0x1f && second == 0x8b;
+        return gzip ? new GZIPInputStream(buffered, 64 * 1024) : buffered;
+    }
+
+    /**
+     * Buffers imported messages and writes them with JDBC batch inserts.
+     * New ids are taken from the message sequence up front so reply links
+     * can be remapped before the rows are written; the old-to-new id maps
+     * of messages and images only live for the current session.
+     */
+    private class MessageBatch {
+        private final List<Object[]> rows = new ArrayList<>(INSERT_BATCH_SIZE);
+        private final ArrayDeque<Long> freeIds = new ArrayDeque<>();
+        private final Map<Long, Long> idMap = new HashMap<>();
+        private final Map<Long, Long> imageIdMap = new HashMap<>();
+        private final List<Long> sessionImages = new ArrayList<>();
+        private LocalDateTime sessionOldest;
+        private int sessionMessages;
+
+        void startSession() {
+            idMap.clear();
+            imageIdMap.clear();
+            sessionImages.clear();
+            sessionOldest = null;
+            sessionMessages = 0;
+        }
+
+        void addImage(Long oldId, Long newId) {
+            if (oldId != null) {
+                imageIdMap.put(oldId, newId);
+            }
+            sessionImages.add(newId);
+        }
+
+        // Links to images that are not in the file are kept as they are
+        private String relinkImages(String content) {
+            if (imageIdMap.isEmpty()) {
+                return content;
+            }
+            return IMAGE_LINK.matcher(content).replaceAll(match -> {
+                Long newId = imageIdMap.get(Long.valueOf(match.group(1)));
+                return newId != null ? "/api/images/" + newId : Matcher.quoteReplacement(match.group());
+            });
+        }
+
+        void add(MessageRecord record, Long sessionId) {
+            if (freeIds.isEmpty()) {
+                freeIds.addAll(jdbcTemplate.queryForList(
+                    "SELECT nextval('message_id_seq') FROM generate_series(1, ?)", Long.class, INSERT_BATCH_SIZE));
+            }
+            Long id = freeIds.poll();
+            if (record.getId() != null) {
+                idMap.put(record.getId(), id);
+            }
+            Long parentId = record.getParentMessageId() != null ? idMap.get(record.getParentMessageId()) : null;
+            LocalDateTime timestamp = record.getTimestamp() != null ? notInFuture(record.getTimestamp()) : LocalDateTime.now();
+
+            rows.add(new Object[] {
+                id,
+                record.getContent() != null ? relinkImages(record.getContent()) : "",
+                record.getSender() != null ? record.getSender() : "user",
+                Timestamp.valueOf(timestamp),
+                sessionId,
+                parentId
+            });
+            if (sessionOldest == null || timestamp.isBefore(sessionOldest)) {
+                sessionOldest = timestamp;
+            }
+            if (rows.size() == INSERT_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (rows.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO messages (id, content, sender, timestamp, session_id, parent_message_id) VALUES (?, ?, ?, ?, ?, ?)",
+                rows);
+            sessionMessages += rows.size();
+            rows.clear();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ExportBody {
+        void write(Writer writer);
+    }
+
+    public static class ImportResult {
+        private int sessions;
+        private int messages;
+        private int images;
+        private String error;
+
+        public int getSessions() { return sessions; }
+        public int getMessages() { return messages; }
+        public int getImages() { return images; }
+        public String getError() { return error; }
+    }
+
+    public static class SessionRecord {
+        private String type = "session";
+        private Long id;
+        private String title;
+        private LocalDateTime createdAt;
+        private LocalDateTime updatedAt;
+
+        static SessionRecord from(ChatSession session) {
+            SessionRecord record = new SessionRecord();
+            record.id = session.getId();
+            record.title = session.getTitle();
+            record.createdAt = session.getCreatedAt();
+            record.updatedAt = session.getUpdatedAt();
+            return record;
+        }
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+
+        public LocalDateTime getCreatedAt() { return createdAt; }
+        public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+        public LocalDateTime getUpdatedAt() { return updatedAt; }
+        public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    }
+
+    public static class ImageRecord {
+        private String type = "image";
+        private Long id;
+        private String contentType;
+        private byte[] data;
+
+        static ImageRecord from(GeneratedImageInfo info, byte[] original) {
+            ImageRecord record = new ImageRecord();
+            record.id = info.getId();
+            record.contentType = info.getContentType();
+            record.data = original;
+            return record;
+        }
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public String getContentType() { return contentType; }
+        public void setContentType(String contentType) { this.contentType = contentType; }
+
+        // Base64 in JSON
+        public byte[] getData() { return data; }
+        public void setData(byte[] data) { this.data = data; }
+    }
+
+    public static class MessageRecord {
+        private String type = "message";
+        private Long id;
+        private Long sessionId;
+        private Long parentMessageId;
+        private String sender;
+        private String content;
+        private LocalDateTime timestamp;
+
+        static MessageRecord from(Message message, Long sessionId) {
+            MessageRecord record = new MessageRecord();
+            record.id = message.getId();
+            record.sessionId = sessionId;
+            record.parentMessageId = message.getParentMessage() != null ? message.getParentMessage().getId() : null;
+            record.sender = message.getSender();
+            record.content = message.getContent();
+            record.timestamp = message.getTimestamp();
+            return record;
+        }
+
+        static MessageRecord from(MessageArchiveService.ArchivedMessage archived, Long sessionId) {
+            MessageRecord record = new MessageRecord();
+            record.id = archived.getId();
+            record.sessionId = sessionId;
+            record.parentMessageId = archived.getParentMessageId();
+            record.sender = archived.getSender();
+            record.content = archived.getContent();
+            record.timestamp = archived.getTimestamp();
+            return record;
+        }
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public Long getSessionId() { return sessionId; }
+        public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
+
+        public Long getParentMessageId() { return parentMessageId; }
+        public void setParentMessageId(Long parentMessageId) { this.parentMessageId = parentMessageId; }
+
+        public String getSender() { return sender; }
+        public void setSender(String sender) { this.sender = sender; }
+
+        public String getContent() { return content; }
+        public void setContent(String content) { this.content = content; }
+
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    }
+}
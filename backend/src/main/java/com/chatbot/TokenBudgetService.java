@@ -0,0 +1,114 @@
+package com.chatbot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+
+@Service
+public class TokenBudgetService {
+
+    // <|begin_of_text|><|start_header_id|>user<|end_header_id|>\n\n ... <|eot_id|><|start_header_id|>assistant<|end_header_id|>\n\n
+    private static final int CHAT_TEMPLATE_TOKENS = 12;
+    private static final String TRUNCATION_MARKER = "\n\n[... content truncated to fit the model context ...]";
+
+    private final LlamaTokenizer tokenizer;
+
+    @Value("${groq.model.context-window:131072}")
+    private int contextWindow;
+
+    @Value("${groq.model.max-completion-tokens:8192}")
+    private int maxCompletionTokens;
+
+    // Groq rejects a single request larger than the per-minute token limit
+    @Value("${groq.rate-limit.tokens-per-minute:6000}")
+    private int tokensPerMinute;
+
+    public TokenBudgetService(ResourceLoader resourceLoader,
+                              @Value("${tokenizer.vocab.path:classpath:tokenizer/llama3.tiktoken}") String vocabPath) {
+        this.tokenizer = loadTokenizer(resourceLoader.getResource(vocabPath));
+    }
+
+    private static LlamaTokenizer loadTokenizer(Resource resource) {
+        if (!resource.exists()) {
+            System.err.println("Tokenizer vocabulary not found at " + resource.getDescription() + ", token counts will be estimated");
+            return LlamaTokenizer.approximate();
+        }
+        try (InputStream in = resource.getInputStream()) {
+            long start = System.currentTimeMillis();
+            LlamaTokenizer loaded = LlamaTokenizer.load(in);
+            System.out.println("Tokenizer vocabulary loaded in " + (System.currentTimeMillis() - start) + " ms");
+            return loaded;
+        } catch (Exception e) {
+            System.err.println("Failed to load tokenizer vocabulary: " + e.getMessage() + ", token counts will be estimated");
+            return LlamaTokenizer.approximate();
+        }
+    }
+
+    public int countTokens(String text) {
+        return tokenizer.countTokens(text);
+    }
+
+    public int countPromptTokens(String prompt) {
+        return tokenizer.countTokens(prompt) + CHAT_TEMPLATE_TOKENS;
+    }
+
+    /**
+     * Truncates the prompt so that it leaves room for {@code reservedCompletionTokens}
+     * within the request token limit.
+     */
+    public String fitPrompt(String prompt, int reservedCompletionTokens) {
+        int budget = promptBudget(reservedCompletionTokens);
+        if (countPromptTokens(prompt) <= budget) {
+            return prompt;
+        }
+        int markerTokens = tokenizer.countTokens(TRUNCATION_MARKER);
+        String truncated = tokenizer.truncate(prompt, budget - CHAT_TEMPLATE_TOKENS - markerTokens);
+        System.out.println("Prompt truncated to fit " + budget + " tokens");
+        return truncated + TRUNCATION_MARKER;
+    }
+
+    /**
+     * Builds {@code prefix + document + suffix}, truncating only the document
+     * so the instructions around it always survive.
+     */
+    public String fitDocument(String prefix, String document, String suffix, int reservedCompletionTokens) {
+        int budget = promptBudget(reservedCompletionTokens)
+            - CHAT_TEMPLATE_TOKENS
+            - tokenizer.countTokens(prefix)
+            - tokenizer.countTokens(suffix);
+
+        if (tokenizer.countTokens(document) <= budget) {
+            return prefix + document + suffix;
+        }
+        String truncated = tokenizer.truncate(document, budget - tokenizer.countTokens(TRUNCATION_MARKER));
+        System.out.println("Document truncated to fit " + budget + " tokens");
+        return prefix + truncated + TRUNCATION_MARKER + suffix;
+    }
+
+    /**
+     * Clamps the requested completion length to the model limit and to what
+     * is left of the request token limit after the prompt.
+     */
+    public int clampMaxTokens(String prompt, int requestedMaxTokens) {
+        int remaining = requestTokenLimit() - countPromptTokens(prompt);
+        int maxTokens = Math.min(requestedMaxTokens, Math.min(maxCompletionTokens, remaining));
+        return Math.max(1, maxTokens);
+    }
+
+    private int promptBudget(int reservedCompletionTokens) {
+        int limit = requestTokenLimit();
+        int reserved = Math.max(1, Math.min(reservedCompletionTokens, Math.min(maxCompletionTokens, limit / 2)));
+        return Math.max(CHAT_TEMPLATE_TOKENS + 1, limit - reserved);
+    }
+
+    /**
+     * Prompt plus completion tokens allowed in one request: the context
+     * window, or the per-minute token limit if that is smaller.
+     */
+    private int requestTokenLimit() {
+        return tokensPerMinute > 0 ? Math.min(contextWindow, tokensPerMinute) : contextWindow;
+    }
+}
@@ -0,0 +1,66 @@
+package com.chatbot;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Measures {@link LlamaTokenizer#countTokens} throughput.
+ *
+ * Usage (after mvn package):
+ *   java -cp target/classes com.chatbot.TokenizerBenchmark src/main/resources/tokenizer/llama3.tiktoken [sample.txt]
+ */
+public class TokenizerBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        LlamaTokenizer tokenizer;
+        if (args.length > 0 && !args[0].equals("-")) {
+            try (InputStream in = new FileInputStream(args[0])) {
+                tokenizer = LlamaTokenizer.load(in);
+            }
+        } else {
+            tokenizer = LlamaTokenizer.approximate();
+        }
+
+        String text = args.length > 1
+            ? new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8)
+            : sampleText();
+        long bytes = text.getBytes(StandardCharsets.UTF_8).length;
+
+        int tokens = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            tokens = tokenizer.countTokens(text);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            tokens = tokenizer.countTokens(text);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = bytes * (double) MEASURED_ROUNDS / (1024 * 1024);
+
+        System.out.println("Vocabulary: " + (tokenizer.isExact() ? "loaded" : "none (estimate)"));
+        System.out.println("Input: " + bytes + " bytes, " + tokens + " tokens");
+        System.out.printf("Throughput: %.1f MB/s (%.1f ms per pass)%n",
+            megabytes / seconds, seconds * 1000 / MEASURED_ROUNDS);
+    }
+
+    private static String sampleText() {
+        String paragraph = "Analyze and summarize this document: quarterly_report.pdf\n\n"
+            + "Revenue grew 12.5% year-over-year to $4,210,000, driven by strong demand in the EMEA region. "
+            + "Operating costs rose 3% while headcount stayed flat at 148 employees. "
+            + "Der Umsatz stieg deutlich; les coûts ont été maîtrisés. 売上は前年同期比で増加しました。\n"
+            + "    if (total > limit) { return total - limit; }\n";
+        StringBuilder sb = new StringBuilder(4 * 1024 * 1024);
+        while (sb.length() < 4 * 1024 * 1024) {
+            sb.append(paragraph);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,38 @@
+-- Baseline schema matching the JPA entities. IF NOT EXISTS lets this run
+-- against databases that were created earlier by ddl-auto=update.
+
+CREATE TABLE IF NOT EXISTS users (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username VARCHAR(255) NOT NULL UNIQUE,
+    display_name VARCHAR(255) NOT NULL,
+    avatar VARCHAR(255),
+    created_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS chat_sessions (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    user_id BIGINT NOT NULL REFERENCES users(id)
+);
+
+CREATE TABLE IF NOT EXISTS messages (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    content TEXT NOT NULL,
+    sender VARCHAR(255) NOT NULL,
+    timestamp TIMESTAMP(6) NOT NULL,
+    session_id BIGINT REFERENCES chat_sessions(id),
+    parent_message_id BIGINT REFERENCES messages(id)
+);
+
+CREATE TABLE IF NOT EXISTS file_uploads (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_name VARCHAR(255) NOT NULL,
+    file_type VARCHAR(255) NOT NULL,
+    file_size BIGINT NOT NULL,
+    file_path VARCHAR(255) NOT NULL,
+    extracted_text TEXT,
+    uploaded_at TIMESTAMP(6) NOT NULL,
+    message_id BIGINT REFERENCES messages(id)
+);
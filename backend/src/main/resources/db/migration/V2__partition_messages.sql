@@ -0,0 +1,69 @@
+-- Range-partition messages by month.
+--
+-- The primary key of a partitioned table has to include the partition key,
+-- so it becomes (id, timestamp) and other tables can no longer hold foreign
+-- keys to messages(id). parent_message_id and file_uploads.message_id stay
+-- as plain (indexed) columns.
+
+DO $$
+DECLARE
+    r RECORD;
+BEGIN
+    FOR r IN SELECT conrelid::regclass AS tbl, conname
+             FROM pg_constraint
+             WHERE contype = 'f' AND confrelid = 'messages'::regclass
+    LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', r.tbl, r.conname);
+    END LOOP;
+END $$;
+
+ALTER TABLE messages RENAME TO messages_unpartitioned;
+
+CREATE SEQUENCE message_id_seq;
+SELECT setval('message_id_seq', COALESCE((SELECT MAX(id) FROM messages_unpartitioned), 0) + 1, false);
+
+CREATE TABLE messages (
+    id BIGINT NOT NULL DEFAULT nextval('message_id_seq'),
+    content TEXT NOT NULL,
+    sender VARCHAR(255) NOT NULL,
+    timestamp TIMESTAMP(6) NOT NULL,
+    session_id BIGINT REFERENCES chat_sessions(id),
+    parent_message_id BIGINT,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+ALTER SEQUENCE message_id_seq OWNED BY messages.id;
+
+-- Catches rows outside every monthly partition (e.g. rehydrated very old sessions)
+CREATE TABLE messages_default PARTITION OF messages DEFAULT;
+
+CREATE INDEX idx_messages_session_timestamp ON messages (session_id, timestamp);
+
+CREATE OR REPLACE FUNCTION create_message_partition(month_start DATE) RETURNS VOID AS $$
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF messages FOR VALUES FROM (%L) TO (%L)',
+        'messages_' || to_char(month_start, 'YYYY_MM'),
+        date_trunc('month', month_start)::date,
+        (date_trunc('month', month_start) + INTERVAL '1 month')::date);
+END $$ LANGUAGE plpgsql;
+
+-- One partition per month from the oldest message up to two months ahead
+DO $$
+DECLARE
+    month_start DATE;
+BEGIN
+    month_start := date_trunc('month', COALESCE((SELECT MIN(timestamp) FROM messages_unpartitioned), now()))::date;
+    WHILE month_start <= (date_trunc('month', now()) + INTERVAL '2 months')::date LOOP
+        PERFORM create_message_partition(month_start);
+        month_start := (month_start + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO messages (id, content, sender, timestamp, session_id, parent_message_id)
+SELECT id, content, sender, timestamp, session_id, parent_message_id FROM messages_unpartitioned;
+
+DROP TABLE messages_unpartitioned;
+
+-- Sessions whose messages were moved to the cold archive
+ALTER TABLE chat_sessions ADD COLUMN archived_at TIMESTAMP(6);
+CREATE INDEX idx_chat_sessions_archive ON chat_sessions (updated_at) WHERE archived_at IS NULL;
@@ -0,0 +1,2 @@
+-- Supports the recursive reply-thread query (children are looked up by parent id)
+CREATE INDEX IF NOT EXISTS idx_messages_parent_message_id ON messages (parent_message_id) WHERE parent_message_id IS NOT NULL;
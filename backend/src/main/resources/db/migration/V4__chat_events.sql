@@ -0,0 +1,26 @@
+-- Cluster-wide event log for live session updates. Every insert is
+-- broadcast to all backend nodes with NOTIFY; the rows themselves let
+-- SSE clients resume from their Last-Event-ID.
+
+CREATE TABLE chat_events (
+    id BIGSERIAL PRIMARY KEY,
+    session_id BIGINT NOT NULL,
+    type VARCHAR(32) NOT NULL,
+    message_id BIGINT,
+    title VARCHAR(255),
+    created_at TIMESTAMP(6) NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_chat_events_session ON chat_events (session_id, id);
+CREATE INDEX idx_chat_events_created_at ON chat_events (created_at);
+
+-- Payload is "sessionId:eventId"; listeners load the event itself only if they have subscribers
+CREATE OR REPLACE FUNCTION notify_chat_event() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('chat_events', NEW.session_id || ':' || NEW.id);
+    RETURN NEW;
+END $$ LANGUAGE plpgsql;
+
+CREATE TRIGGER chat_events_notify
+    AFTER INSERT ON chat_events
+    FOR EACH ROW EXECUTE FUNCTION notify_chat_event();
@@ -0,0 +1,19 @@
+-- Generated images with their downscaled variants. Messages reference them
+-- by URL instead of inlining the full image as base64.
+
+CREATE TABLE generated_images (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    session_id BIGINT,
+    content_type VARCHAR(255) NOT NULL,
+    original BYTEA NOT NULL,
+    display BYTEA,
+    thumbnail BYTEA,
+    width INTEGER,
+    height INTEGER,
+    original_size BIGINT NOT NULL,
+    display_size BIGINT,
+    thumbnail_size BIGINT,
+    processing_ms BIGINT,
+    status VARCHAR(32) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL
+);
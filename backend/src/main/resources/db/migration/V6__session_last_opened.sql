@@ -0,0 +1,5 @@
+-- When a session was last opened. Reading a session does not touch
+-- updated_at, so archiving also checks this to leave sessions that are
+-- still being read (including ones just rehydrated) in the hot table.
+
+ALTER TABLE chat_sessions ADD COLUMN last_opened_at TIMESTAMP(6);
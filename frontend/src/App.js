@@ -360,7 +360,7 @@ function App() {
     chatData.messages.forEach((message, index) => {
       const timestamp = new Date(message.timestamp).toLocaleString();
       const sender = message.sender === 'user' ? chatData.user : 'GenBot AI';
-      const content = message.content.replace(/!\[.*?\]\(data:image\/[^)]+\)/g, '[Generated Image]');
+      const content = message.content.replace(/!\[.*?\]\((data:image|\/api\/images)\/[^)]+\)/g, '[Generated Image]');
       
       exportText += `[${timestamp}] ${sender}:\n${content}\n\n`;
     });
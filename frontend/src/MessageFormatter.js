@@ -2,6 +2,8 @@ import React from 'react';
 import { Prism as SyntaxHighlighter } from 'react-syntax-highlighter';
 import { vscDarkPlus, vs } from 'react-syntax-highlighter/dist/esm/styles/prism';
 
+const API_BASE_URL = process.env.REACT_APP_API_URL || `${window.location.protocol}//${window.location.hostname}:8080`;
+
 const MessageFormatter = ({ content, darkMode }) => {
   const decodeHtml = (text) => {
     return text
@@ -159,7 +161,52 @@ const MessageFormatter = ({ content, darkMode }) => {
     return parts.length > 0 ? parts : text;
   };
   
-  // Handle image content
+  // Handle stored images: show the downscaled display variant, download the original
+  if (content.startsWith('![') && content.includes('](/api/images/')) {
+    const imageMatch = content.match(/!\[.*?\]\(\/api\/images\/(\d+)\/[a-z]+\)/);
+    if (imageMatch) {
+      const imageUrl = `${API_BASE_URL}/api/images/${imageMatch[1]}`;
+      const downloadImage = async () => {
+        // The API is usually on another origin, where the download attribute is ignored
+        const response = await fetch(`${imageUrl}/original`);
+        const blob = await response.blob();
+        const extension = blob.type === 'image/jpeg' ? 'jpg' : blob.type === 'image/webp' ? 'webp' : 'png';
+        const objectUrl = URL.createObjectURL(blob);
+        const link = document.createElement('a');
+        link.href = objectUrl;
+        link.download = `generated-image-${imageMatch[1]}.${extension}`;
+        document.body.appendChild(link);
+        link.click();
+        document.body.removeChild(link);
+        URL.revokeObjectURL(objectUrl);
+      };
+      
+      return (
+        <div className="formatted-message relative group">
+          <a href={`${imageUrl}/original`} target="_blank" rel="noopener noreferrer">
+            <img 
+              src={`${imageUrl}/display`} 
+              alt="Generated Image" 
+              className="max-w-full h-auto rounded-lg shadow-lg"
+              style={{ maxHeight: '400px' }}
+              loading="lazy"
+            />
+          </a>
+          <button
+            onClick={downloadImage}
+            className="absolute top-2 right-2 opacity-0 group-hover:opacity-100 bg-black/50 hover:bg-black/70 text-white p-2 rounded-lg transition-all duration-200"
+            title="Download Image"
+          >
+            <svg className="w-4 h-4" fill="none" stroke="currentColor" viewBox="0 0 24 24">
+              <path strokeLinecap="round" strokeLinejoin="round" strokeWidth={2} d="M12 10v6m0 0l-4-4m4 4l4-4m-6 8h8a2 2 0 002-2V7a2 2 0 00-2-2H8a2 2 0 00-2 2v11a2 2 0 002 2z" />
+            </svg>
+          </button>
+        </div>
+      );
+    }
+  }
+  
+  // Handle inline image content (messages created before images were stored separately)
   if (content.startsWith('![') && content.includes('](data:image/')) {
     const imageMatch = content.match(/!\[.*?\]\((data:image\/[^)]+)\)/);
     if (imageMatch) {